@@ -6,7 +6,7 @@ b1 = open("B1.txt", "w")
 b2 = open("B2.txt", "w")
 
 for line in data.readlines():
-    t, time, res = line.split()
+    t, time, res = line.split()[:3]
     if(t == "A1"):
         a1.write(f"{time} {res}\n")
     if(t == "A2"):
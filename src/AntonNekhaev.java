@@ -1,6 +1,7 @@
 import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
 import java.util.*;
-import java.util.regex.Pattern;
 
 import static java.lang.Math.*;
 
@@ -9,52 +10,53 @@ import static java.lang.Math.*;
  */
 public class AntonNekhaev {
     /**
-     * Supporting function for printing map.
+     * Find the route with one search in the space of states when the algorithm allows it (see {@link #findRoute(BitBoard, SearchAlgorithm)})
+     */
+    private final boolean singlePass;
+
+    /**
+     * Search the legs of route at the same time
+     */
+    private final boolean parallelLegs;
+
+    /**
+     * Threads for legs of routes and for algorithms that are run at the same time, shared by all solvers
+     */
+    private static final java.util.concurrent.ForkJoinPool POOL =
+            new java.util.concurrent.ForkJoinPool(max(2, Runtime.getRuntime().availableProcessors()));
+
+    /**
+     * Constructor of solver that finds routes with one search when the algorithm allows it.
+     */
+    AntonNekhaev() {
+        this(true);
+    }
+
+    /**
+     * Constructor of solver that searches legs of route at the same time.
      *
-     * @param map 2 dimensional array
+     * @param singlePass - find the route with one search when the algorithm allows it, otherwise always search
+     *                   direct route and route through Tortuga separately
      */
-    private void printMap(char[][] map) {
-        System.out.print("-------------------\n");
-        System.out.print("  ");
-        for (int i = 0; i < map.length; i++) {
-            System.out.printf("%d ", i);
-        }
-        System.out.print("\n");
-        for (int i = 0; i < map.length; i++) {
-            System.out.printf("%d ", i);
-            for (int j = 0; j < map[0].length; j++) {
-                System.out.printf("%c ", map[i][j]);
-            }
-            System.out.print("\n");
-        }
-        System.out.print("-------------------\n");
+    AntonNekhaev(boolean singlePass) {
+        this(singlePass, true);
     }
 
     /**
-     * Supporing function for generation answer map with path.
+     * Constructor of solver.
      *
-     * @param path    - array of coordinates of path
-     * @param rows    - amount of rows
-     * @param columns - amount of columns
-     * @return new generated map with path
+     * @param singlePass   - find the route with one search when the algorithm allows it, otherwise always search
+     *                     direct route and route through Tortuga separately
+     * @param parallelLegs - search direct route and both legs through Tortuga at the same time
+     *                     (callers that already solve many boards in parallel can turn it off)
      */
-    private char[][] getPathMap(ArrayList<Tuple<Integer>> path, int rows, int columns) {
-        char[][] ans_map = new char[rows][columns];
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < columns; j++) {
-                ans_map[i][j] = Constants.BLANK;
-            }
-        }
-        for (Tuple<Integer> integerTuple : path) {
-            int x = integerTuple.getX();
-            int y = integerTuple.getY();
-            ans_map[x][y] = Constants.PATH;
-        }
-        return ans_map;
+    AntonNekhaev(boolean singlePass, boolean parallelLegs) {
+        this.singlePass = singlePass;
+        this.parallelLegs = parallelLegs;
     }
 
     /**
-     * Method that solves the problem with some board and search algorithm.
+     * Method that finds the answer route with some board and search algorithm.
      * We solve problem in two ways:
      * 1 - direct path to Dead Men's chest
      * 2 - go to Tortuga and then to Dead Men's chest
@@ -62,8 +64,25 @@ public class AntonNekhaev {
      *
      * @param board     - arbitrary board
      * @param algorithm - Backtracking or A* instance of class
+     * @return result with length and path of the best route (length is INF if there is no route) and total time of searches
      */
-    void solve(Board board, SearchAlgorithm algorithm) {
+    Result findRoute(Board board, SearchAlgorithm algorithm) {
+        return findRoute(board.planes(), algorithm);
+    }
+
+    /**
+     * Method that finds the answer route on bit planes of board (which can be mapped from a file), see {@link #findRoute(Board, SearchAlgorithm)}.
+     * If the algorithm finds shortest paths in the whole space of states (cell, cask, krakenIsDead), the search from Jack
+     * to the chest already considers all routes through Tortuga (including the ones where Kraken is killed on the way),
+     * so in single pass mode only this search is made.
+     * Otherwise the three searches are independent, so with parallel legs the legs through Tortuga are searched
+     * by instances from {@link SearchAlgorithm#leg(int)} in the pool while this thread searches the direct route.
+     *
+     * @param board     - bit planes of arbitrary board
+     * @param algorithm - Backtracking or A* instance of class
+     * @return result with length and path of the best route (length is INF if there is no route) and total time of searches
+     */
+    Result findRoute(BitBoard board, SearchAlgorithm algorithm) {
         ArrayList<Tuple<Integer>> shifts = new ArrayList<>();
 
         shifts.add(new Tuple<>(1, 0));
@@ -76,49 +95,173 @@ public class AntonNekhaev {
         shifts.add(new Tuple<>(-1, -1));
         shifts.add(new Tuple<>(1, -1));
 
-        // direct path to chest
-        Result direct = algorithm.solve(board.from_x, board.from_y, board.finish_x, board.finish_y, shifts, board);
+        if (singlePass && algorithm.searchesAllLayers()) {
+            return algorithm.solve(board.from_x, board.from_y, board.finish_x, board.finish_y, shifts, board);
+        }
+
+        Result direct, toTortuga, fromTortugaToFinish;
+        if (parallelLegs) {
+            SearchAlgorithm first = algorithm.leg(0), second = algorithm.leg(1);
+            java.util.concurrent.CompletableFuture<Result> toTortugaTask = java.util.concurrent.CompletableFuture.supplyAsync(() ->
+                    first.solve(board.from_x, board.from_y, board.tortuga_x, board.tortuga_y, shifts, board), POOL);
+            java.util.concurrent.CompletableFuture<Result> fromTortugaTask = java.util.concurrent.CompletableFuture.supplyAsync(() ->
+                    second.solve(board.tortuga_x, board.tortuga_y, board.finish_x, board.finish_y, shifts, board), POOL);
+            direct = algorithm.solve(board.from_x, board.from_y, board.finish_x, board.finish_y, shifts, board);
+            toTortuga = join(toTortugaTask);
+            fromTortugaToFinish = join(fromTortugaTask);
+        } else {
+            // direct path to chest
+            direct = algorithm.solve(board.from_x, board.from_y, board.finish_x, board.finish_y, shifts, board);
 
-        // through Tortuga
-        Result toTortuga = algorithm.solve(board.from_x, board.from_y, board.tortuga_x, board.tortuga_y, shifts, board);
-        Result fromTortugaToFinish = algorithm.solve(board.tortuga_x, board.tortuga_y, board.finish_x, board.finish_y, shifts, board);
+            // through Tortuga
+            toTortuga = algorithm.solve(board.from_x, board.from_y, board.tortuga_x, board.tortuga_y, shifts, board);
+            fromTortugaToFinish = algorithm.solve(board.tortuga_x, board.tortuga_y, board.finish_x, board.finish_y, shifts, board);
+        }
 
         long ans_time = direct.getAmountTimeForExecution() + toTortuga.getAmountTimeForExecution() + fromTortugaToFinish.getAmountTimeForExecution();
+        SearchStats stats = SearchStats.ofRoute(direct.getStats(), toTortuga.getStats(), fromTortugaToFinish.getStats());
 
         if (direct.getPathLength() == Constants.INF &&
                 (toTortuga.getPathLength() == Constants.INF || fromTortugaToFinish.getPathLength() == Constants.INF)) {
-            System.out.print("Lose");
-            return;
+            return new Result(Constants.INF, null, ans_time, stats);
         }
 
-        ArrayList<Tuple<Integer>> ans_path;
+        Path ans_path;
 
         if (direct.getPathLength() < toTortuga.getPathLength() + fromTortugaToFinish.getPathLength()) {
             ans_path = direct.getPath();
         } else {
-            ans_path = toTortuga.getPath();
-            ans_path.remove(ans_path.size() - 1);
-            ans_path.addAll(fromTortugaToFinish.getPath());
+            ans_path = toTortuga.getPath().concat(fromTortugaToFinish.getPath());
+        }
+        return new Result(ans_path.length(), ans_path, ans_time, stats);
+    }
+
+    /**
+     * Steady state measurement of route search, see {@link SearchAlgorithm#measure}.
+     *
+     * @param board      - bit planes of arbitrary board
+     * @param algorithm  - Backtracking or A* instance of class
+     * @param warmup     - amount of searches of route that are not measured
+     * @param iterations - amount of measured searches of route, at least one
+     * @return result of the last search with times of measured searches
+     */
+    Result measureRoute(BitBoard board, SearchAlgorithm algorithm, int warmup, int iterations) {
+        return Timing.measure(() -> findRoute(board, algorithm), warmup, iterations);
+    }
+
+    /**
+     * Waits for the result of task, errors of search are thrown as they are.
+     *
+     * @param task search that is running in the pool
+     * @return result of search
+     */
+    private static <T> T join(java.util.concurrent.CompletableFuture<T> task) {
+        try {
+            return task.join();
+        } catch (java.util.concurrent.CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Method that solves the problem with some board and search algorithm and prints the answer with map.
+     *
+     * @param board     - arbitrary board
+     * @param algorithm - Backtracking or A* instance of class
+     */
+    void solve(Board board, SearchAlgorithm algorithm) {
+        ResultSink out = ResultSink.toStandardOutput(ResultSink.Mode.MAP);
+        try {
+            solve(board, algorithm, out);
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
+    }
+
+    /**
+     * Method that solves the problem with some board and search algorithm and writes the answer to the sink.
+     *
+     * @param board     - arbitrary board
+     * @param algorithm - Backtracking or A* instance of class
+     * @param out       - sink for the answer
+     * @throws IOException if the answer can not be written
+     */
+    void solve(Board board, SearchAlgorithm algorithm, ResultSink out) throws IOException {
+        out.writeRoute(findRoute(board, algorithm), board.rows, board.columns);
+    }
 
-        System.out.printf("Win\n%d\n", ans_path.size() - 1);
-        for (Tuple<Integer> integerTuple : ans_path) {
-            System.out.printf("[%d,%d] ", integerTuple.getX(), integerTuple.getY());
+    /**
+     * Solves the board with A* and Backtracking at the same time and writes answers to
+     * outputAStar.txt and outputBacktracking.txt.
+     *
+     * @param board    - arbitrary board
+     * @param scenario - perception scenario
+     * @param mode     - what is written for the answer
+     * @throws IOException if output files can not be created or written
+     */
+    private void solveToFiles(Board board, int scenario, ResultSink.Mode mode) throws IOException {
+        // bit planes are built before the searches, so both of them read the same copy
+        board.planes();
+        try (ResultSink aStarOut = ResultSink.toFile("outputAStar.txt", mode);
+             ResultSink backtrackingOut = ResultSink.toFile("outputBacktracking.txt", mode)) {
+            java.util.concurrent.CompletableFuture<Void> backtracking = java.util.concurrent.CompletableFuture.runAsync(() -> {
+                try {
+                    solve(board, new BackTracking(scenario), backtrackingOut);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, POOL);
+            solve(board, new AStar(scenario), aStarOut);
+            join(backtracking);
         }
-        System.out.print("\n");
-        char[][] pathMap = getPathMap(ans_path, board.rows, board.columns);
-        printMap(pathMap);
-        System.out.printf("%f ms\n", (double) ans_time / 1e6);
     }
 
     /**
      * Entry point function of program. Provide user interface, parsing for coordinates and perception scenario, validating input.
      *
-     * @param args - arguments from command line (is not used in this program)
-     * @throws FileNotFoundException if outputAStar.txt or outputBacktracking.txt if there are do not exist
+     * If the first argument is "bench" runs benchmark of search algorithms instead (see {@link SolverBenchmark}),
+     * if it is "batch" solves many random boards at once (see {@link BatchRunner}),
+     * if it is "mapped" solves a board stored in binary file (see {@link BoardFile}),
+     * if it is "stream" solves all scenarios from an input file (see {@link StreamSolver}),
+     * if it is "serve" answers scenarios sent to a Unix domain socket (see {@link SolverDaemon}).
+     * Otherwise the answers are written to outputAStar.txt and outputBacktracking.txt, the argument output=map|path|binary
+     * chooses what is written (see {@link ResultSink.Mode}, full map by default).
+     *
+     * @param args - arguments from command line (used only for benchmark, batch, mapped, stream and serve modes and output of answers)
+     * @throws IOException if outputAStar.txt or outputBacktracking.txt if there are do not exist, or board file can not be read
      */
-    public static void main(String[] args) throws FileNotFoundException {
-        PrintStream stdout = System.out;
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("bench")) {
+            SolverBenchmark.fromArguments(args).run(System.out);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("batch")) {
+            BatchRunner.fromArguments(args).run();
+            return;
+        }
+        if (args.length > 0 && args[0].equals("mapped")) {
+            BoardFile.main(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("stream")) {
+            StreamSolver.fromArguments(args).run();
+            return;
+        }
+        if (args.length > 0 && args[0].equals("serve")) {
+            SolverDaemon.fromArguments(args).run();
+            return;
+        }
+        ResultSink.Mode mode = ResultSink.Mode.MAP;
+        if (args.length > 0 && args[0].startsWith("output=")) {
+            mode = ResultSink.Mode.of(args[0].substring("output=".length()));
+        }
         AntonNekhaev m = new AntonNekhaev();
         Scanner in = new Scanner(System.in);
         int inputType = 3;
@@ -148,48 +291,33 @@ public class AntonNekhaev {
             } while (perceptionScenario != 1 && perceptionScenario != 2);
             Board board = new Board(9, 9);
 
-            System.setOut(new PrintStream("outputAStar.txt"));
-            m.solve(board, new AStar(perceptionScenario));
-            System.setOut(new PrintStream("outputBacktracking.txt"));
-            m.solve(board, new BackTracking(perceptionScenario));
-            System.setOut(stdout);
+            m.solveToFiles(board, perceptionScenario, mode);
             return;
         }
-        Scanner scannerInput;
+        ScenarioReader scannerInput;
         try {
-            scannerInput = new Scanner(new File("input.txt"));
+            scannerInput = new ScenarioReader(new FileInputStream("input.txt"));
         } catch (IOException e) {
             System.out.print("Error: No input.txt file");
             return;
         }
-        String coords = "";
-        try {
-            coords = scannerInput.nextLine();
-        } catch (Exception e) {
-            System.out.print("Error: Wrong coordinates in input.txt");
-            return;
-        }
-        if (!Pattern.matches("^(\\[\\d,\\d]\\s){5}\\[\\d,\\d]$", coords)) {
-            System.out.print("Error: Wrong coordinates in input.txt\n");
-            return;
-        }
-        try {
-            perceptionScenario = scannerInput.nextInt();
-            if (!(perceptionScenario == 1 || perceptionScenario == 2)) {
-                throw new InputMismatchException();
+        ArrayList<Tuple<Integer>> coordinates;
+        try (scannerInput) {
+            try {
+                coordinates = scannerInput.readCoordinates();
+                if (coordinates == null) {
+                    throw new InputMismatchException();
+                }
+            } catch (InputMismatchException e) {
+                System.out.print("Error: Wrong coordinates in input.txt\n");
+                return;
+            }
+            try {
+                perceptionScenario = scannerInput.readScenario();
+            } catch (InputMismatchException e) {
+                System.out.print("Error: Wrong perception scenario in input.txt\n");
+                return;
             }
-        } catch (Exception e) {
-            System.out.print("Error: Wrong perception scenario in input.txt\n");
-            return;
-        }
-
-        ArrayList<Tuple<Integer>> coordinates = new ArrayList<>();
-        for (String token : coords.split(" ")) {
-            token = token.replace("[", "");
-            token = token.replace("]", "");
-
-            String[] digits = token.split(",");
-            coordinates.add(new Tuple<>(Integer.parseInt(digits[0]), Integer.parseInt(digits[1])));
         }
 
         Board board;
@@ -199,11 +327,7 @@ public class AntonNekhaev {
             System.out.print(e.getMessage());
             return;
         }
-        System.setOut(new PrintStream("outputAStar.txt"));
-        m.solve(board, new AStar(perceptionScenario));
-        System.setOut(new PrintStream("outputBacktracking.txt"));
-        m.solve(board, new BackTracking(perceptionScenario));
-        System.setOut(stdout);
+        m.solveToFiles(board, perceptionScenario, mode);
     }
 }
 
@@ -345,101 +469,6 @@ class Tuple<T> {
     }
 }
 
-/**
- * Supporting class for A* and BackTracking algorithm.
- * Consists of:
- * Current x and y coordinates of Jack
- * Current path length from start coordinates
- * Flag for a presence of a cask. So, does he have an ability to kill kraken
- * Flag for kraken death. So, if it set to true thus kraken has been already killed, so Jack can path through his cells
- */
-class State {
-    /**
-     * Current x coordinate
-     */
-    public int currentX;
-
-    /**
-     * Current y coordinate
-     */
-    public int currentY;
-
-    /**
-     * Current path length from start cell
-     */
-    int pathLength;
-
-    /**
-     * Does Jack have a cask from Tortuga (Did he visit Tortuga?).
-     * This variable shows if a jack has the ability to kill the Kraken.
-     */
-    public boolean cask = false;
-
-    /**
-     * Has Jack killed the Kraken? Is it alive?
-     * This variable indicates whether the kraken is killed.
-     */
-    public boolean krakenIsDead = false;
-
-    /**
-     * Constructor just with coordinates, convenient for first status.
-     *
-     * @param currentX - position x
-     * @param currentY - position y
-     */
-    State(int currentX, int currentY) {
-        this.currentX = currentX;
-        this.currentY = currentY;
-        pathLength = 0;
-    }
-
-    /**
-     * Constructor that sets all variables.
-     *
-     * @param currentX     - position x
-     * @param currentY     - position y
-     * @param cask         - cask flag
-     * @param krakenIsDead - kraken death flag
-     * @param pathLength   - length of path from begin to end
-     */
-    State(int currentX, int currentY, boolean cask, boolean krakenIsDead, int pathLength) {
-        this(currentX, currentY);
-        this.cask = cask;
-        this.krakenIsDead = krakenIsDead;
-        this.pathLength = pathLength;
-    }
-
-    /**
-     * This function moves state to another coordinates and incenses path. So, when Jack moves, his coordinates change
-     * and path length increases by one.
-     *
-     * @param x - new x coordinate
-     * @param y - new y coordinate
-     * @return new State with copy of other variables of class
-     */
-    State move(int x, int y) {
-        return new State(x, y, this.cask, this.krakenIsDead, this.pathLength + 1);
-    }
-
-    /**
-     * Getter for x coordinate
-     *
-     * @return x coordinate
-     */
-    int getX() {
-        return currentX;
-    }
-
-    /**
-     * Getter for y coordinate
-     *
-     * @return y coordinate
-     */
-    int getY() {
-        return currentY;
-    }
-}
-
 /**
  * Class board that holds all information about the whole field
  */
@@ -489,6 +518,44 @@ class Board {
      */
     public int tortuga_y;
 
+    /**
+     * Source of randomness for map generation
+     */
+    private java.util.random.RandomGenerator random;
+
+    /**
+     * Amount of random cells tried before all suitable cells are listed (see {@link #randomCell(java.util.function.IntPredicate)})
+     */
+    private static final int RANDOM_TRIES = 64;
+
+    /**
+     * Compact copy of the board for search algorithms, built on demand and updated by setters when board changes
+     */
+    private volatile BitBoard planes;
+
+    /**
+     * Gives compact bit plane copy of the board. It is built once and then setters update it in place,
+     * so searches in different threads share it (the board must not be changed while they run).
+     *
+     * @return bit planes of board
+     */
+    BitBoard planes() {
+        BitBoard built = planes;
+        if (built == null) {
+            synchronized (this) {
+                built = planes;
+                if (built == null) {
+                    BoardEvent event = new BoardEvent();
+                    event.begin();
+                    built = new BitBoard(this);
+                    planes = built;
+                    event.end("planes", rows, columns);
+                }
+            }
+        }
+        return built;
+    }
+
     /**
      * Function that takes the cell and return its symbol. If coordinate is invalid returns null.
      *
@@ -527,9 +594,40 @@ class Board {
      * @param columns - amount of columns
      */
     Board(int rows, int columns) {
+        this(rows, columns, new SplittableRandom(), 0);
+    }
+
+    /**
+     * Creates random board that is reproducible, so the same seed always gives the same map.
+     *
+     * @param rows    - amount of rows
+     * @param columns - amount of columns
+     * @param seed    - seed for random generator
+     */
+    Board(int rows, int columns, long seed) {
+        this(rows, columns, new SplittableRandom(seed), 0);
+    }
+
+    /**
+     * Creates random board using given source of randomness (see {@link BoardGenerator}).
+     *
+     * @param rows    - amount of rows
+     * @param columns - amount of columns
+     * @param random  - source of randomness
+     * @param density - probability that a free cell gets an extra rock, from 0 to 1
+     */
+    Board(int rows, int columns, java.util.random.RandomGenerator random, double density) {
+        if (density < 0 || density > 1) {
+            throw new IllegalArgumentException("Density of obstacles must be from 0 to 1");
+        }
+        BoardEvent event = new BoardEvent();
+        event.begin();
+        this.random = random;
         initialize(rows, columns);
 //        createSampleBoard4();
         generateMap();
+        placeObstacles(density);
+        event.end("generate", rows, columns);
     }
 
     /**
@@ -543,7 +641,14 @@ class Board {
      * @throws IncorrectPlace exception in situation when Actors want to be in the cells that are occupied by the condition of the task.
      */
     Board(int rows, int columns, ArrayList<Tuple<Integer>> arr) throws IncorrectPlace {
+        BoardEvent event = new BoardEvent();
+        event.begin();
         initialize(rows, columns);
+        for (Tuple<Integer> coordinate : arr) {
+            if (!isValidCoordinates(coordinate.getX(), coordinate.getY())) {
+                throw new IncorrectPlace("Coordinates out of board");
+            }
+        }
 
         Tuple<Integer> Jack = arr.get(0);
         setPlayer(Jack.getX(), Jack.getY());
@@ -583,6 +688,7 @@ class Board {
             throw new IncorrectPlace("Chest invalid place");
         }
         setChest(Chest.getX(), Chest.getY());
+        event.end("place", rows, columns);
     }
 
     /**
@@ -666,19 +772,32 @@ class Board {
     }
 
     /**
-     * Supporting function for random number generation in interval [0, max].
+     * Chooses uniformly random cell among the cells that are suitable for a piece. A few random cells are tried first,
+     * which is enough when most of cells are free, then all suitable cells are listed, so placement always ends.
      *
-     * @param max - maximum number in interval
-     * @return rand int x, where x less or equal max
+     * @param suitable - test for cell number x * columns + y
+     * @return number of cell x * columns + y
+     * @throws IllegalStateException if there is no suitable cell
      */
-    private static int randInRange(int max) {
-
-        if (max < 0) {
-            throw new IllegalArgumentException("Max must be greater or equals than 0");
+    private int randomCell(java.util.function.IntPredicate suitable) {
+        int cells = rows * columns;
+        for (int i = 0; i < RANDOM_TRIES; i++) {
+            int cell = random.nextInt(cells);
+            if (suitable.test(cell)) {
+                return cell;
+            }
         }
-
-        Random r = new Random();
-        return r.nextInt(max);
+        int[] candidates = new int[cells];
+        int count = 0;
+        for (int cell = 0; cell < cells; cell++) {
+            if (suitable.test(cell)) {
+                candidates[count++] = cell;
+            }
+        }
+        if (count == 0) {
+            throw new IllegalStateException("No free cell for a piece on board " + rows + "x" + columns);
+        }
+        return candidates[random.nextInt(count)];
     }
 
     /**
@@ -686,45 +805,47 @@ class Board {
      */
     private void generateMap() {
         setPlayer(from_x, from_y);
-        int x = randInRange(rows), y = randInRange(columns);
-
-        while (isOccupied(x, y)) {
-            x = randInRange(rows);
-            y = randInRange(columns);
-        }
-        setKraken(x, y);
+        int cell = randomCell(c -> !isOccupied(c / columns, c % columns));
+        setKraken(cell / columns, cell % columns);
 
         // set Davy Jones
-        while (isOccupied(x, y)) {
-            x = randInRange(rows);
-            y = randInRange(columns);
-        }
-        setDavy(x, y);
+        cell = randomCell(c -> !isOccupied(c / columns, c % columns));
+        setDavy(cell / columns, cell % columns);
 
         // set rock
-        while (isOccupied(x, y) && getPiece(x, y) != Constants.KRAKEN_CELL) {
-            x = randInRange(rows);
-            y = randInRange(columns);
-        }
-        setRock(x, y);
+        cell = randomCell(c -> !isOccupied(c / columns, c % columns) || getPiece(c / columns, c % columns) == Constants.KRAKEN_CELL);
+        setRock(cell / columns, cell % columns);
 
         board[from_x][from_y] = Constants.BLANK;
         // set tortuga
-        while (isOccupied(x, y) || isPerceptionCell(x, y)) {
-            x = randInRange(rows);
-            y = randInRange(columns);
-        }
+        cell = randomCell(c -> !isOccupied(c / columns, c % columns) && !isPerceptionCell(c / columns, c % columns));
+        int x = cell / columns, y = cell % columns;
         setTortuga(x, y);
         if (x != from_x && y != from_y) {
             board[from_x][from_y] = Constants.PLAYER;
         }
 
         // set Chest
-        while (isOccupied(x, y) || isPerceptionCell(x, y)) {
-            x = randInRange(rows);
-            y = randInRange(columns);
+        cell = randomCell(c -> !isOccupied(c / columns, c % columns) && !isPerceptionCell(c / columns, c % columns));
+        setChest(cell / columns, cell % columns);
+    }
+
+    /**
+     * Puts extra rocks on blank cells (not on Jack and not in perception zones) for load tests.
+     *
+     * @param density - probability that a blank cell gets a rock
+     */
+    private void placeObstacles(double density) {
+        if (density == 0) {
+            return;
+        }
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < columns; j++) {
+                if (board[i][j] == Constants.BLANK && (i != from_x || j != from_y) && random.nextDouble() < density) {
+                    setRock(i, j);
+                }
+            }
         }
-        setChest(x, y);
     }
 
     /**
@@ -761,7 +882,7 @@ class Board {
         if (board[x][y] == Constants.ROCK) {
             setChar = Constants.KRAKEN_WITH_ROCK;
         }
-        board[x][y] = setChar;
+        put(x, y, setChar);
         setObj(x, y, shifts, Constants.KRAKEN);
     }
 
@@ -793,6 +914,7 @@ class Board {
         shifts.add(new Tuple<>(0, 0));
         tortuga_x = x;
         tortuga_y = y;
+        updatePoints();
         setObj(x, y, shifts, Constants.TORTUGA);
     }
 
@@ -805,6 +927,7 @@ class Board {
     public void setChest(int x, int y) {
         finish_x = x;
         finish_y = y;
+        updatePoints();
         ArrayList<Tuple<Integer>> shifts = new ArrayList<>();
         shifts.add(new Tuple<>(0, 0));
 
@@ -829,13 +952,13 @@ class Board {
         shifts.add(new Tuple<>(-1, -1));
         shifts.add(new Tuple<>(1, -1));
 
-        board[x][y] = Constants.DAVY_CELL;
+        put(x, y, Constants.DAVY_CELL);
 
         for (Tuple<Integer> shift : shifts) {
             int new_x = x + shift.getX();
             int new_y = y + shift.getY();
             if (isValidCoordinates(new_x, new_y) && !isKrakenHeart(new_x, new_y)) {
-                board[new_x][new_y] = Constants.DAVY;
+                put(new_x, new_y, Constants.DAVY);
             }
         }
     }
@@ -849,7 +972,8 @@ class Board {
     public void setPlayer(int x, int y) {
         from_x = x;
         from_y = y;
-        board[from_x][from_y] = Constants.PLAYER;
+        updatePoints();
+        put(from_x, from_y, Constants.PLAYER);
     }
 
     /**
@@ -865,556 +989,6970 @@ class Board {
             int new_x = x + shift.getX();
             int new_y = y + shift.getY();
             if (isValidCoordinates(new_x, new_y)) {
-                board[new_x][new_y] = sym;
+                put(new_x, new_y, sym);
             }
         }
     }
 
+    /**
+     * Writes symbol into cell. Bit planes that are already built are updated in place,
+     * so searches that keep state between solves see only the changed cells.
+     *
+     * @param x     coordinate
+     * @param y     coordinate
+     * @param piece symbol to set
+     */
+    private void put(int x, int y, char piece) {
+        board[x][y] = piece;
+        BitBoard built = planes;
+        if (built != null) {
+            built.updateCell(x, y, piece);
+        }
+    }
+
+    /**
+     * Copies coordinates of Jack, Tortuga and chest to bit planes that are already built.
+     */
+    private void updatePoints() {
+        BitBoard built = planes;
+        if (built != null) {
+            built.from_x = from_x;
+            built.from_y = from_y;
+            built.tortuga_x = tortuga_x;
+            built.tortuga_y = tortuga_y;
+            built.finish_x = finish_x;
+            built.finish_y = finish_y;
+        }
+    }
+
     /**
      * Function that prints the board
      */
     public void printBoard() {
-        System.out.print("  ");
-        for (int i = 0; i < rows; i++) {
-            System.out.printf("%d ", i);
-        }
-        System.out.print("\n");
-        for (int i = 0; i < rows; i++) {
-            System.out.printf("%d ", i);
-            for (int j = 0; j < columns; j++) {
-                System.out.printf("%c ", board[i][j]);
-            }
-            System.out.print("\n");
+        ResultSink out = ResultSink.toStandardOutput(ResultSink.Mode.MAP);
+        try {
+            out.writeBoard(board, rows);
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
     }
 }
 
 /**
- * Abstract class for the Search Algorithm, that has method that solves the problem when Jack starts from (from_x, from_y)
- * and wants to go to (finish_x, finish_y) using shifts on a given board.
- * Also, we can reconstruct the path using the method getPath.
+ * Reproducible source of random boards of any size with extra rocks for load tests.
+ * Every board gets its own stream split from the stream of generator, and workers get their own generators
+ * by {@link #split()}, so the same seed gives the same boards without any shared state between threads.
  */
-abstract class SearchAlgorithm {
+final class BoardGenerator {
     /**
-     * Number of scenario 1 or 2
+     * Stream of randomness that boards and other generators are split from
      */
-    protected int scenario;
+    private final SplittableRandom random;
+
     /**
-     * (from_x, from_y) - position from where Jack starts
-     * (finish_x, finish_y) - position to where Jack goes
+     * Size of boards
      */
-    int from_x, from_y, finish_x, finish_y;
+    private final int rows, columns;
 
     /**
-     * Getter for scenario
+     * Probability that a free cell gets an extra rock
+     */
+    private final double density;
+
+    /**
+     * Constructor of generator.
      *
-     * @return scenario number
+     * @param seed    of randomness
+     * @param rows    of boards
+     * @param columns of boards
+     * @param density probability that a free cell gets an extra rock, from 0 to 1
      */
-    public int getScenario() {
-        return scenario;
+    BoardGenerator(long seed, int rows, int columns, double density) {
+        this(new SplittableRandom(seed), rows, columns, density);
     }
 
     /**
-     * array of shift for Jack movement with respect to (x, y)
+     * Constructor of generator with given stream.
+     *
+     * @param random  stream of randomness
+     * @param rows    of boards
+     * @param columns of boards
+     * @param density probability that a free cell gets an extra rock, from 0 to 1
      */
-    ArrayList<Tuple<Integer>> shifts;
+    private BoardGenerator(SplittableRandom random, int rows, int columns, double density) {
+        if (rows < 1 || columns < 1 || density < 0 || density > 1) {
+            throw new IllegalArgumentException("Size of board must be positive and density must be from 0 to 1");
+        }
+        this.random = random;
+        this.rows = rows;
+        this.columns = columns;
+        this.density = density;
+    }
 
     /**
-     * Board with actors
+     * Creates generator of other boards for another thread. The boards depend only on the seed
+     * and the order of calls of split and next on this generator.
+     *
+     * @return independent generator with the same settings
      */
-    Board board;
+    BoardGenerator split() {
+        return new BoardGenerator(random.split(), rows, columns, density);
+    }
 
     /**
-     * Two-dimensional array in cell map[x][y] holds the shortest path to this coordinate
+     * Generates the next board.
+     *
+     * @return random board
      */
-    int[][] map;
+    Board next() {
+        return new Board(rows, columns, random.split(), density);
+    }
+}
 
+/**
+ * Compact copy of board for search algorithms. Every property of cells is kept in its own bit plane
+ * (packed long[] where bit i is the cell with index i), so a board takes a few bits per cell instead of a char.
+ * The board is surrounded by a border of PAD blocked cells, so moves (including jumps of scenario 2)
+ * from any cell of the board never leave the planes and search algorithms do not check coordinates.
+ * Cell (x, y) has index (x + PAD) * stride + (y + PAD).
+ * Passability for both Kraken states and the zone where Kraken can be killed are precomputed once per board
+ * (see {@link #buildDerivedPlanes()}), so searches only look them up.
+ * Planes are kept in LongBuffers, so they can live in the heap or be mapped from a file (see {@link BoardFile}).
+ */
+final class BitBoard {
     /**
-     * variable that holds amount of time for algorithm execution
+     * Width of blocked border around the board
      */
-    long amountTimeForExecution;
+    static final int PAD = 2;
 
+    /**
+     * Plane of cells where Jack dies: rocks, Davy Jones, Kraken and their perception zones
+     */
+    static final int BLOCKED = 0;
+
+    /**
+     * Plane of Kraken cells: his perception zone and "heart" (these cells become free when Kraken is dead)
+     */
+    static final int KRAKEN_ZONE = 1;
+
+    /**
+     * Plane of Kraken "heart" cells (with or without rock)
+     */
+    static final int KRAKEN_HEART = 2;
+
+    /**
+     * Plane of Tortuga cell
+     */
+    static final int TORTUGA = 3;
+
+    /**
+     * Plane of Dead Man’s Chest cell
+     */
+    static final int CHEST = 4;
+
+    /**
+     * Plane of cells where Jack survives while Kraken is alive (derived from other planes)
+     */
+    static final int PASSABLE_ALIVE = 5;
+
+    /**
+     * Plane of cells where Jack survives after Kraken is dead (derived from other planes)
+     */
+    static final int PASSABLE_DEAD = 6;
+
+    /**
+     * Plane of cells from which Jack with a cask kills Kraken: eight neighbours of Kraken "heart" (derived from other planes)
+     */
+    static final int KILL_ZONE = 7;
+
+    /**
+     * Amount of planes
+     */
+    static final int PLANES = 8;
+
+    /**
+     * Amount of rows and columns of the board without border
+     */
+    final int rows, columns;
+
+    /**
+     * Distance between indexes of vertically adjacent cells
+     */
+    final int stride;
+
+    /**
+     * Amount of cells with border
+     */
+    final int cells;
+
+    /**
+     * Coordinates of Jack, Tortuga and chest
+     */
+    int from_x, from_y, tortuga_x, tortuga_y, finish_x, finish_y;
+
+    /**
+     * Bit planes
+     */
+    private final LongBuffer[] planes;
+
+    /**
+     * Cells changed by {@link #updateCell(int, int, char)} in order of edits, and amount of earlier edits
+     * that are no longer kept (see {@link #changesSince(long)})
+     */
+    private int[] changes = new int[16];
+    private int changeCount;
+    private long changeBase;
+
+    /**
+     * Creates empty board (all cells are blank, border is blocked).
+     *
+     * @param rows    - amount of rows
+     * @param columns - amount of columns
+     */
+    BitBoard(int rows, int columns) {
+        this(rows, columns, new LongBuffer[PLANES]);
+        for (int plane = 0; plane < PLANES; plane++) {
+            planes[plane] = LongBuffer.allocate(words(rows, columns));
+        }
+        for (int x = -PAD; x < rows + PAD; x++) {
+            for (int y = -PAD; y < columns + PAD; y++) {
+                if (x < 0 || x >= rows || y < 0 || y >= columns) {
+                    set(BLOCKED, index(x, y));
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates board over given planes (for example, mapped from a file).
+     *
+     * @param rows    - amount of rows
+     * @param columns - amount of columns
+     * @param planes  - PLANES buffers of words(rows, columns) longs
+     */
+    BitBoard(int rows, int columns, LongBuffer[] planes) {
+        words(rows, columns);
+        this.rows = rows;
+        this.columns = columns;
+        this.stride = columns + 2 * PAD;
+        this.cells = (rows + 2 * PAD) * stride;
+        this.planes = planes;
+    }
+
+    /**
+     * Amount of longs in one plane of board.
+     *
+     * @param rows    - amount of rows
+     * @param columns - amount of columns
+     * @return amount of longs
+     */
+    static int words(int rows, int columns) {
+        long cells = (long) (rows + 2 * PAD) * (columns + 2 * PAD);
+        if (rows <= 0 || columns <= 0 || cells > Integer.MAX_VALUE - 64) {
+            throw new IllegalArgumentException("Board " + rows + "x" + columns + " is not supported");
+        }
+        return (int) ((cells + 63) >>> 6);
+    }
+
+    /**
+     * Creates compact copy of board.
+     *
+     * @param board to copy
+     */
+    BitBoard(Board board) {
+        this(board.rows, board.columns);
+        for (int x = 0; x < rows; x++) {
+            for (int y = 0; y < columns; y++) {
+                setCell(x, y, board.getPiece(x, y));
+            }
+        }
+        from_x = board.from_x;
+        from_y = board.from_y;
+        tortuga_x = board.tortuga_x;
+        tortuga_y = board.tortuga_y;
+        finish_x = board.finish_x;
+        finish_y = board.finish_y;
+        buildDerivedPlanes();
+    }
+
+    /**
+     * Computes passable planes for alive and dead Kraken and the kill zone from the main planes.
+     * Must be called after the board is filled with setCell.
+     */
+    void buildDerivedPlanes() {
+        LongBuffer blocked = planes[BLOCKED];
+        LongBuffer kraken = planes[KRAKEN_ZONE];
+        LongBuffer alive = planes[PASSABLE_ALIVE];
+        LongBuffer dead = planes[PASSABLE_DEAD];
+        LongBuffer kill = planes[KILL_ZONE];
+        for (int word = 0; word < blocked.capacity(); word++) {
+            alive.put(word, ~blocked.get(word));
+            dead.put(word, ~blocked.get(word) | kraken.get(word));
+            kill.put(word, 0);
+        }
+        LongBuffer hearts = planes[KRAKEN_HEART];
+        for (int word = 0; word < hearts.capacity(); word++) {
+            long bits = hearts.get(word);
+            while (bits != 0) {
+                int heart = (word << 6) | Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                for (int dx = -1; dx <= 1; dx++) {
+                    for (int dy = -1; dy <= 1; dy++) {
+                        int index = heart + dx * stride + dy;
+                        if ((dx != 0 || dy != 0) && index >= 0 && index < cells) {
+                            set(KILL_ZONE, index);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Index of cell in planes.
+     *
+     * @param x coordinate (from -PAD to rows + PAD - 1)
+     * @param y coordinate (from -PAD to columns + PAD - 1)
+     * @return index of cell
+     */
+    int index(int x, int y) {
+        return (x + PAD) * stride + y + PAD;
+    }
+
+    /**
+     * Coordinate x of cell.
+     *
+     * @param index of cell
+     * @return x coordinate
+     */
+    int x(int index) {
+        return index / stride - PAD;
+    }
+
+    /**
+     * Coordinate y of cell.
+     *
+     * @param index of cell
+     * @return y coordinate
+     */
+    int y(int index) {
+        return index % stride - PAD;
+    }
+
+    /**
+     * Number of cell x * columns + y (numbering without border, used by {@link Path}).
+     *
+     * @param index of cell
+     * @return number of cell
+     */
+    int number(int index) {
+        return x(index) * columns + y(index);
+    }
+
+    /**
+     * Checks if cell belongs to plane.
+     *
+     * @param plane number of plane
+     * @param index of cell
+     * @return true if bit of the cell is set
+     */
+    boolean test(int plane, int index) {
+        return (planes[plane].get(index >>> 6) >>> index & 1L) != 0;
+    }
+
+    /**
+     * Checks if Jack can stay in the cell: it is not blocked, or it is Kraken's cell and Kraken is dead.
+     *
+     * @param index        of cell
+     * @param krakenIsDead kraken death flag
+     * @return true if Jack survives in the cell
+     */
+    boolean isPassable(int index, boolean krakenIsDead) {
+        return test(krakenIsDead ? PASSABLE_DEAD : PASSABLE_ALIVE, index);
+    }
+
+    /**
+     * Plane of cells where Jack survives in the layer.
+     *
+     * @param layer cask and Kraken flags (see {@link PackedState})
+     * @return PASSABLE_DEAD if Kraken is dead in the layer else PASSABLE_ALIVE
+     */
+    static int passablePlane(int layer) {
+        return (layer & PackedState.DEAD) != 0 ? PASSABLE_DEAD : PASSABLE_ALIVE;
+    }
+
+    /**
+     * Layer of Jack after he comes to the cell: in Tortuga he takes a cask,
+     * and with a cask he kills Kraken from any cell around his "heart".
+     *
+     * @param layer cask and Kraken flags (see {@link PackedState}) before the cell
+     * @param index of cell
+     * @return cask and Kraken flags before the next move
+     */
+    int layerAfter(int layer, int index) {
+        if (test(TORTUGA, index)) {
+            layer |= PackedState.CASK;
+        }
+        if ((layer & PackedState.CASK) != 0 && test(KILL_ZONE, index)) {
+            layer |= PackedState.DEAD;
+        }
+        return layer;
+    }
+
+    /**
+     * Checks if Jack with a cask kills Kraken in this cell.
+     *
+     * @param index of cell
+     * @return true if Kraken "heart" is one of eight neighbours of the cell
+     */
+    boolean isKillZone(int index) {
+        return test(KILL_ZONE, index);
+    }
+
+    /**
+     * Adds cell to plane.
+     *
+     * @param plane number of plane
+     * @param index of cell
+     */
+    void set(int plane, int index) {
+        planes[plane].put(index >>> 6, planes[plane].get(index >>> 6) | 1L << index);
+    }
+
+    /**
+     * Removes cell from plane.
+     *
+     * @param plane number of plane
+     * @param index of cell
+     */
+    void clear(int plane, int index) {
+        planes[plane].put(index >>> 6, planes[plane].get(index >>> 6) & ~(1L << index));
+    }
+
+    /**
+     * Writes symbol of Board into the planes of cell (x, y), previous content of the cell is replaced.
+     *
+     * @param x     coordinate
+     * @param y     coordinate
+     * @param piece symbol from Constants
+     */
+    void setCell(int x, int y, char piece) {
+        int index = index(x, y);
+        for (int plane = 0; plane < PLANES; plane++) {
+            clear(plane, index);
+        }
+        if (piece == Constants.KRAKEN || piece == Constants.KRAKEN_CELL) {
+            set(KRAKEN_ZONE, index);
+        }
+        if (piece == Constants.KRAKEN_CELL || piece == Constants.KRAKEN_WITH_ROCK) {
+            set(KRAKEN_HEART, index);
+        }
+        if (piece == Constants.KRAKEN || piece == Constants.KRAKEN_CELL || piece == Constants.KRAKEN_WITH_ROCK
+                || piece == Constants.ROCK || piece == Constants.DAVY || piece == Constants.DAVY_CELL) {
+            set(BLOCKED, index);
+        }
+        if (piece == Constants.TORTUGA) {
+            set(TORTUGA, index);
+        }
+        if (piece == Constants.CHEST) {
+            set(CHEST, index);
+        }
+    }
+
+    /**
+     * Writes symbol of Board into cell (x, y) of a built board and updates the derived planes around it,
+     * so a small edit does not build all planes again. The cell and the cells whose kill zone changed are recorded
+     * as changes.
+     *
+     * @param x     coordinate
+     * @param y     coordinate
+     * @param piece symbol from Constants
+     */
+    void updateCell(int x, int y, char piece) {
+        setCell(x, y, piece);
+        int index = index(x, y);
+        if (test(BLOCKED, index)) {
+            clear(PASSABLE_ALIVE, index);
+        } else {
+            set(PASSABLE_ALIVE, index);
+        }
+        if (test(BLOCKED, index) && !test(KRAKEN_ZONE, index)) {
+            clear(PASSABLE_DEAD, index);
+        } else {
+            set(PASSABLE_DEAD, index);
+        }
+        recordChange(index);
+        // setCell cleared the kill zone of the cell, and a new or removed "heart" changes it for the neighbours
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dy = -1; dy <= 1; dy++) {
+                int neighbour = index + dx * stride + dy;
+                boolean kill = nearHeart(neighbour);
+                if (kill != test(KILL_ZONE, neighbour)) {
+                    if (kill) {
+                        set(KILL_ZONE, neighbour);
+                    } else {
+                        clear(KILL_ZONE, neighbour);
+                    }
+                    recordChange(neighbour);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks if one of eight neighbours of cell is Kraken "heart".
+     *
+     * @param index of cell
+     * @return true if the cell belongs to kill zone
+     */
+    private boolean nearHeart(int index) {
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dy = -1; dy <= 1; dy++) {
+                int neighbour = index + dx * stride + dy;
+                if ((dx != 0 || dy != 0) && neighbour >= 0 && neighbour < cells && test(KRAKEN_HEART, neighbour)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds cell to the list of changes. The list keeps at most a part of all cells, when it is full it starts again,
+     * since users of an older edit count would build everything anyway.
+     *
+     * @param index of cell
+     */
+    private void recordChange(int index) {
+        if (changeCount == cells / 8 + 64) {
+            changeBase += changeCount;
+            changeCount = 0;
+        }
+        if (changeCount == changes.length) {
+            changes = Arrays.copyOf(changes, changeCount * 2);
+        }
+        changes[changeCount++] = index;
+    }
+
+    /**
+     * Amount of cell changes made by {@link #updateCell(int, int, char)} since the board was built.
+     * Results computed for this board stay valid while this number is the same.
+     *
+     * @return amount of edits
+     */
+    long edits() {
+        return changeBase + changeCount;
+    }
+
+    /**
+     * Cells changed after the given amount of edits, a cell can be repeated.
+     *
+     * @param edits value of {@link #edits()} some time ago
+     * @return indexes of cells, or null if the changes are no longer kept
+     */
+    int[] changesSince(long edits) {
+        if (edits < changeBase || edits > edits()) {
+            return null;
+        }
+        return Arrays.copyOfRange(changes, (int) (edits - changeBase), changeCount);
+    }
+
+    /**
+     * Updates words of a copy made by {@link #copyPlanes(int[], long[][])} that hold the given cells.
+     *
+     * @param numbers of planes
+     * @param copy    of planes
+     * @param indexes of cells
+     */
+    void copyCells(int[] numbers, long[][] copy, int[] indexes) {
+        for (int cell : indexes) {
+            for (int i = 0; i < numbers.length; i++) {
+                copy[i][cell >>> 6] = planes[numbers[i]].get(cell >>> 6);
+            }
+        }
+    }
+
+    /**
+     * Amount of memory taken by planes.
+     *
+     * @return size in bytes
+     */
+    long sizeInBytes() {
+        return (long) PLANES * planes[0].capacity() * Long.BYTES;
+    }
+
+    /**
+     * Gives access to a plane.
+     *
+     * @param plane number of plane
+     * @return view of plane with its own position
+     */
+    LongBuffer plane(int plane) {
+        return planes[plane].duplicate();
+    }
+
+    /**
+     * Copies planes, so changes of board can be found later (see {@link #changedCells(int[], long[][], int)}).
+     *
+     * @param numbers of planes
+     * @param copy    previous copy that is reused if it has the same size, or null
+     * @return copy of every plane
+     */
+    long[][] copyPlanes(int[] numbers, long[][] copy) {
+        if (copy == null || copy.length != numbers.length || copy[0].length != planes[0].capacity()) {
+            copy = new long[numbers.length][planes[0].capacity()];
+        }
+        for (int i = 0; i < numbers.length; i++) {
+            planes[numbers[i]].get(0, copy[i]);
+        }
+        return copy;
+    }
+
+    /**
+     * Finds cells where planes differ from their copy made by {@link #copyPlanes(int[], long[][])} on this or other board of the same size.
+     *
+     * @param numbers of planes
+     * @param copy    of planes
+     * @param limit   largest amount of changed cells that is interesting
+     * @return indexes of changed cells, or null if there are more than limit of them or the copy is of other size
+     */
+    int[] changedCells(int[] numbers, long[][] copy, int limit) {
+        int words = planes[0].capacity();
+        if (copy[0].length != words) {
+            return null;
+        }
+        int[] changed = new int[16];
+        int count = 0;
+        for (int word = 0; word < words; word++) {
+            long difference = 0;
+            for (int i = 0; i < numbers.length; i++) {
+                difference |= copy[i][word] ^ planes[numbers[i]].get(word);
+            }
+            while (difference != 0) {
+                if (count == limit) {
+                    return null;
+                }
+                if (count == changed.length) {
+                    changed = Arrays.copyOf(changed, count * 2);
+                }
+                changed[count++] = (word << 6) | Long.numberOfTrailingZeros(difference);
+                difference &= difference - 1;
+            }
+        }
+        return Arrays.copyOf(changed, count);
+    }
+}
+
+/**
+ * Abstract class for the Search Algorithm, that has method that solves the problem when Jack starts from (from_x, from_y)
+ * and wants to go to (finish_x, finish_y) using shifts on a given board.
+ * Also, we can reconstruct the path using the method getPath.
+ * <p>
+ * Algorithms search in the space of states (cell, cask, krakenIsDead), see {@link PackedState}:
+ * the same cell can be reached with and without cask, and these are different states.
+ */
+abstract class SearchAlgorithm {
+    /**
+     * Number of scenario 1 or 2
+     */
+    protected int scenario;
+    /**
+     * (from_x, from_y) - position from where Jack starts
+     * (finish_x, finish_y) - position to where Jack goes
+     */
+    int from_x, from_y, finish_x, finish_y;
+
+    /**
+     * Getter for scenario
+     *
+     * @return scenario number
+     */
+    public int getScenario() {
+        return scenario;
+    }
+
+    /**
+     * array of shift for Jack movement with respect to (x, y)
+     */
+    ArrayList<Tuple<Integer>> shifts;
+
+    /**
+     * Bit planes of board
+     */
+    BitBoard planes;
+
+    /**
+     * Moves of Jack as offsets of cell indexes in planes
+     */
+    Moves moves;
+
+    /**
+     * variable that holds amount of time for algorithm execution
+     */
+    long amountTimeForExecution;
+
+    /**
+     * min path length after execution of algorithm
+     */
+    int pathLength;
+
+    /**
+     * cells of path
+     */
+    Path path;
+
+    /**
+     * Counters of the last solve, written by algorithm when search is over (see {@link #finish(SolveEvent, long)})
+     */
+    final SearchStats stats = new SearchStats();
+
+    /**
+     * Instances of the same algorithm for the legs of route that are searched at the same time
+     */
+    private SearchAlgorithm[] legs;
+
+    /**
+     * Names of algorithms for command line and requests, see {@link #create(String, int)}.
+     * "astar" is the default search; "bidirectional" is not faster on these boards
+     * (see {@link BidirectionalAStar}), it is kept for comparison in the benchmark.
+     * {@link HierarchicalAStar} is not offered here, only the benchmark creates it
+     */
+    static final List<String> NAMES = List.of("astar", "bidirectional", "backtracking", "parallelbacktracking",
+            "jps", "jpsplus", "ida", "field", "lpa");
+
+    /**
+     * Creates algorithm by name.
+     *
+     * @param name     one of {@link #NAMES}
+     * @param scenario number of scenario
+     * @return new instance of algorithm
+     * @throws IllegalArgumentException if name is unknown
+     */
+    static SearchAlgorithm create(String name, int scenario) {
+        return switch (name) {
+            case "astar" -> new AStar(scenario);
+            case "bidirectional" -> new BidirectionalAStar(scenario);
+            case "backtracking" -> new BackTracking(scenario);
+            case "parallelbacktracking" -> new ParallelBackTracking(scenario);
+            case "jps" -> new JumpPointSearch(scenario);
+            case "jpsplus" -> new JumpPointSearch(scenario, true);
+            case "ida" -> new IterativeDeepeningAStar(scenario);
+            case "field" -> new DistanceFieldSearch(scenario);
+            case "lpa" -> new LifelongPlanningAStar(scenario);
+            default -> throw new IllegalArgumentException("Unknown algorithm " + name);
+        };
+    }
+
+    /**
+     * Creates an instance of the same algorithm with the same settings. Instances keep the state of search
+     * in their own arrays, so one instance is used by one thread at a time, and different instances
+     * can search the same board in parallel.
+     *
+     * @return new instance
+     */
+    abstract SearchAlgorithm newInstance();
+
+    /**
+     * Gives an instance of the same algorithm for searching a leg of route in another thread.
+     * Instances are created once and reused, so their arrays are reused too.
+     *
+     * @param i number of leg, 0 or 1
+     * @return instance for the leg
+     */
+    SearchAlgorithm leg(int i) {
+        if (legs == null) {
+            legs = new SearchAlgorithm[2];
+        }
+        if (legs[i] == null) {
+            legs[i] = newInstance();
+        }
+        return legs[i];
+    }
+
+    /**
+     * Function that solves the problem when Jack starts from (from_x, from_y).
+     *
+     * @param from_x   coordinate
+     * @param from_y   coordinate
+     * @param finish_x coordinate
+     * @param finish_y coordinate
+     * @param shifts   array of shift for Jack movement with respect to (x, y)
+     * @param board    for which we solve the problem
+     * @return instance of Result class
+     */
+    Result solve(int from_x, int from_y, int finish_x, int finish_y, ArrayList<Tuple<Integer>> shifts, Board board) {
+        return solve(from_x, from_y, finish_x, finish_y, shifts, board.planes());
+    }
+
+    /**
+     * Function that solves the problem when Jack starts from (from_x, from_y) on bit planes of board
+     * (which can be mapped from a file).
+     *
+     * @param from_x   coordinate
+     * @param from_y   coordinate
+     * @param finish_x coordinate
+     * @param finish_y coordinate
+     * @param shifts   array of shift for Jack movement with respect to (x, y)
+     * @param planes   of board for which we solve the problem
+     * @return instance of Result class
+     */
+    abstract Result solve(int from_x, int from_y, int finish_x, int finish_y, ArrayList<Tuple<Integer>> shifts, BitBoard planes);
+
+    /**
+     * Steady state measurement: solves the same problem several times without measuring to warm up
+     * (class loading, JIT compilation, allocation of arrays), then measures the given amount of iterations.
+     *
+     * @param from_x     coordinate
+     * @param from_y     coordinate
+     * @param finish_x   coordinate
+     * @param finish_y   coordinate
+     * @param shifts     array of shift for Jack movement with respect to (x, y)
+     * @param planes     of board for which we solve the problem
+     * @param warmup     amount of iterations that are not measured
+     * @param iterations amount of measured iterations, at least one
+     * @return result of the last iteration with times of measured iterations
+     */
+    Result measure(int from_x, int from_y, int finish_x, int finish_y, ArrayList<Tuple<Integer>> shifts, BitBoard planes,
+                   int warmup, int iterations) {
+        return Timing.measure(() -> solve(from_x, from_y, finish_x, finish_y, shifts, planes), warmup, iterations);
+    }
+
+    /**
+     * Tells if the algorithm finds shortest paths in the whole space of states (cell, cask, krakenIsDead).
+     * Then the path to the chest found by one search is not longer than any route through Tortuga.
+     *
+     * @return true if states with different cask and Kraken flags are searched separately
+     */
+    boolean searchesAllLayers() {
+        return false;
+    }
+
+    /**
+     * Heuristic function that count straight path between to coordinates.
+     *
+     * @param from_x   coordinate
+     * @param from_y   coordinate
+     * @param finish_x coordinate
+     * @param finish_y coordinate
+     * @return length of straight path between to coordinates
+     */
+    int h(int from_x, int from_y, int finish_x, int finish_y) {
+        int diag = min(abs(finish_x - from_x), abs(finish_y - from_y));
+        return diag + abs(abs(from_x - finish_x) - abs(from_y - finish_y));
+    }
+
+    /**
+     * Saves parameters of the problem and prepares bit planes of the board and tables of moves.
+     * Tables are rebuilt only when the shifts or the width of board change.
+     *
+     * @param from_x   coordinate
+     * @param from_y   coordinate
+     * @param finish_x coordinate
+     * @param finish_y coordinate
+     * @param shifts   array of shift for Jack movement with respect to (x, y)
+     * @param planes   of board for which we solve the problem
+     */
+    void prepare(int from_x, int from_y, int finish_x, int finish_y, ArrayList<Tuple<Integer>> shifts, BitBoard planes) {
+        this.from_x = from_x;
+        this.from_y = from_y;
+        this.finish_x = finish_x;
+        this.finish_y = finish_y;
+        this.shifts = shifts;
+        this.planes = planes;
+        if (moves == null || moves.shifts != shifts || moves.stride != planes.stride) {
+            moves = new Moves(planes.stride, shifts, scenario);
+        }
+    }
+
+    /**
+     * Function for reconstruct the path from the chain of previous states in linear time.
+     * Jumps of scenario 2 are written with the cell in between, so the path is made of single steps.
+     *
+     * @param parent array where for every state the previous state on the path is written (-1 for the start)
+     * @param id     of the last state of path
+     * @return path
+     */
+    Path getPath(int[] parent, int id) {
+        return getPath(i -> parent[i], id);
+    }
+
+    /**
+     * Function for reconstruct the path from the chain of previous states kept in any storage, see {@link #getPath(int[], int)}.
+     *
+     * @param parent gives for every state the previous state on the path (-1 for the start)
+     * @param id     of the last state of path
+     * @return path
+     */
+    Path getPath(java.util.function.IntUnaryOperator parent, int id) {
+        int cells = planes.cells;
+        int size = 1;
+        for (int i = id; parent.applyAsInt(i) >= 0; i = parent.applyAsInt(i)) {
+            size += isJump(i % cells, parent.applyAsInt(i) % cells) ? 2 : 1;
+        }
+        int[] path = new int[size];
+        int position = size - 1;
+        int cell = id % cells;
+        path[position--] = planes.number(cell);
+        for (int i = id; parent.applyAsInt(i) >= 0; i = parent.applyAsInt(i)) {
+            int previous = parent.applyAsInt(i) % cells;
+            if (isJump(cell, previous)) {
+                path[position--] = planes.number((cell + previous) / 2);
+            }
+            path[position--] = planes.number(previous);
+            cell = previous;
+        }
+        return new Path(path, planes.columns);
+    }
+
+    /**
+     * Checks if the move between two cells is a jump over one cell.
+     *
+     * @param cell     index of cell
+     * @param previous index of previous cell
+     * @return true if cells are on distance two in a row or column
+     */
+    boolean isJump(int cell, int previous) {
+        int difference = abs(cell - previous);
+        return difference == 2 || difference == 2 * planes.stride;
+    }
+
+    /**
+     * Getter for path length
+     *
+     * @return path length
+     */
+    int getPathLength() {
+        return pathLength;
+    }
+
+    /**
+     * Getter for amount of expanded states.
+     *
+     * @return amount of states expanded during the last solve
+     */
+    long getExpanded() {
+        return stats.expanded;
+    }
+
+    /**
+     * Ends the solve: saves time of execution, commits the flight recorder event if recording is on
+     * and gives the result with a copy of counters (the algorithm is reused by the next solve).
+     *
+     * @param event     started at the beginning of solve
+     * @param startTime of solve by {@link System#nanoTime()}
+     * @return instance of Result class
+     */
+    Result finish(SolveEvent event, long startTime) {
+        amountTimeForExecution = System.nanoTime() - startTime;
+        stats.nanos = amountTimeForExecution;
+        if (event.shouldCommit()) {
+            event.algorithm = getClass().getSimpleName();
+            event.scenario = scenario;
+            event.cells = planes.cells;
+            event.fromX = from_x;
+            event.fromY = from_y;
+            event.finishX = finish_x;
+            event.finishY = finish_y;
+            event.pathLength = pathLength;
+            event.expanded = stats.expanded;
+            event.pushed = stats.pushed;
+            event.stalePops = stats.stalePops;
+            event.reopened = stats.reopened;
+            event.peakOpen = stats.peakOpen;
+            event.krakenKills = stats.krakenKills;
+            event.commit();
+        }
+        return new Result(pathLength, path, amountTimeForExecution, stats.copy());
+    }
+}
+
+/**
+ * State of Jack packed into one long, so search algorithms keep states in primitive arrays and stacks:
+ * bits 0-31 - index of cell in {@link BitBoard}, bit 32 - cask, bit 33 - Kraken is dead, bits 34-63 - path length.
+ * The pair of flags is called layer: 0 - nothing, 1 - cask, 3 - cask and dead Kraken (Kraken can not die without cask).
+ * In arrays the states are numbered by id = slot * cells + cell, where slot 0, 1, 2 stands for layer 0, 1, 3.
+ */
+final class PackedState {
+    /**
+     * Layer bit of cask
+     */
+    static final int CASK = 1;
+
+    /**
+     * Layer bit of dead Kraken
+     */
+    static final int DEAD = 2;
+
+    /**
+     * Amount of possible layers
+     */
+    static final int SLOTS = 3;
+
+    /**
+     * Utility class
+     */
+    private PackedState() {
+    }
+
+    /**
+     * Packs state.
+     *
+     * @param cell  index of cell
+     * @param layer cask and Kraken flags
+     * @param g     path length
+     * @return packed state
+     */
+    static long of(int cell, int layer, int g) {
+        return (long) g << 34 | (long) layer << 32 | (cell & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Index of cell of packed state.
+     *
+     * @param state packed state
+     * @return index of cell
+     */
+    static int cell(long state) {
+        return (int) state;
+    }
+
+    /**
+     * Layer of packed state.
+     *
+     * @param state packed state
+     * @return cask and Kraken flags
+     */
+    static int layer(long state) {
+        return (int) (state >>> 32) & 3;
+    }
+
+    /**
+     * Path length of packed state.
+     *
+     * @param state packed state
+     * @return path length
+     */
+    static int g(long state) {
+        return (int) (state >>> 34);
+    }
+
+    /**
+     * Number of layer in arrays.
+     *
+     * @param layer cask and Kraken flags
+     * @return 0, 1 or 2
+     */
+    static int slot(int layer) {
+        return layer - (layer >>> 1);
+    }
+
+    /**
+     * Layer by its number in arrays.
+     *
+     * @param slot 0, 1 or 2
+     * @return cask and Kraken flags
+     */
+    static int layerOfSlot(int slot) {
+        return slot + (slot >>> 1);
+    }
+}
+
+/**
+ * Moves of Jack as tables of offsets between cell indexes of {@link BitBoard}.
+ * Every move has the target offset, the offset of cell that must be passable on the way
+ * (the target itself for a step, the cell in between for a jump of scenario 2) and the cost.
+ */
+final class Moves {
+    /**
+     * Width of planes the offsets are computed for
+     */
+    final int stride;
+
+    /**
+     * Shifts the moves are built from
+     */
+    final ArrayList<Tuple<Integer>> shifts;
+
+    /**
+     * Offsets of target cells
+     */
+    final int[] offsets;
+
+    /**
+     * Offsets of cells between current and target cell
+     */
+    final int[] middles;
+
+    /**
+     * Costs of moves
+     */
+    final int[] costs;
+
+    /**
+     * Builds tables of moves.
+     *
+     * @param stride   width of planes
+     * @param shifts   array of shift for Jack movement with respect to (x, y)
+     * @param scenario number of scenario, in scenario 2 Jack also jumps over one cell in four directions
+     */
+    Moves(int stride, ArrayList<Tuple<Integer>> shifts, int scenario) {
+        this.stride = stride;
+        this.shifts = shifts;
+        int jumps = scenario == 2 ? 4 : 0;
+        offsets = new int[shifts.size() + jumps];
+        middles = new int[offsets.length];
+        costs = new int[offsets.length];
+        for (int k = 0; k < shifts.size(); k++) {
+            offsets[k] = shifts.get(k).getX() * stride + shifts.get(k).getY();
+            middles[k] = offsets[k];
+            costs[k] = 1;
+        }
+        int[] directions = {stride, 1, -stride, -1};
+        for (int k = 0; k < jumps; k++) {
+            offsets[shifts.size() + k] = 2 * directions[k];
+            middles[shifts.size() + k] = directions[k];
+            costs[shifts.size() + k] = 2;
+        }
+    }
+}
+
+/**
+ * Supporting class for returning values from Search algorithm.
+ */
+class Result {
     /**
      * min path length after execution of algorithm
      */
-    int pathLength;
+    private final int pathLength;
+
+    /**
+     * cells of path
+     */
+    private final Path path;
+
+    /**
+     * variable that holds amount of time of algorithm execution
+     */
+    private final long amountTimeForExecution;
+
+    /**
+     * Counters of search (for a route they are summed over legs)
+     */
+    private final SearchStats stats;
+
+    /**
+     * Times of repeated measurement, null if the search was made once
+     */
+    private final Timing timing;
+
+    /**
+     * Constructor for Result class that just create an instance of it
+     *
+     * @param pathLength             - min path length after execution of algorithm
+     * @param path                   - cells of path (null if there is no path)
+     * @param amountTimeForExecution - variable that holds amount of time of algorithm execution
+     */
+    Result(int pathLength, Path path, long amountTimeForExecution) {
+        this(pathLength, path, amountTimeForExecution, new SearchStats());
+    }
+
+    /**
+     * Constructor for Result class with counters of search.
+     *
+     * @param pathLength             - min path length after execution of algorithm
+     * @param path                   - cells of path (null if there is no path)
+     * @param amountTimeForExecution - variable that holds amount of time of algorithm execution
+     * @param stats                  - counters of search
+     */
+    Result(int pathLength, Path path, long amountTimeForExecution, SearchStats stats) {
+        this(pathLength, path, amountTimeForExecution, stats, null);
+    }
+
+    /**
+     * Constructor for Result class with counters and times of repeated measurement.
+     *
+     * @param pathLength             - min path length after execution of algorithm
+     * @param path                   - cells of path (null if there is no path)
+     * @param amountTimeForExecution - variable that holds amount of time of algorithm execution
+     * @param stats                  - counters of search
+     * @param timing                 - times of repeated measurement (null if the search was made once)
+     */
+    Result(int pathLength, Path path, long amountTimeForExecution, SearchStats stats, Timing timing) {
+        this.pathLength = pathLength;
+        this.path = path;
+        this.amountTimeForExecution = amountTimeForExecution;
+        this.stats = stats;
+        this.timing = timing;
+    }
+
+    /**
+     * Gives the same result with times of repeated measurement.
+     *
+     * @param timing times of measured iterations
+     * @return new instance of Result class
+     */
+    Result withTiming(Timing timing) {
+        return new Result(pathLength, path, amountTimeForExecution, stats, timing);
+    }
+
+    /**
+     * Getter for path length.
+     *
+     * @return path length
+     */
+    int getPathLength() {
+        return pathLength;
+    }
+
+    /**
+     * Getter for path.
+     *
+     * @return cells of path
+     */
+    Path getPath() {
+        return path;
+    }
+
+    /**
+     * Getter for amount time for execution of algorithm.
+     *
+     * @return amount of time
+     */
+    long getAmountTimeForExecution() {
+        return amountTimeForExecution;
+    }
+
+    /**
+     * Getter for counters of search.
+     *
+     * @return counters
+     */
+    SearchStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Getter for times of repeated measurement.
+     *
+     * @return times or null if the search was made once
+     */
+    Timing getTiming() {
+        return timing;
+    }
+}
+
+/**
+ * Times of repeated measurement of the same search after warm-up. Total time of every iteration
+ * is split into setup (allocating and filling arrays) and the search itself, see {@link SearchStats#setupNanos}.
+ */
+final class Timing {
+    /**
+     * Amount of measured iterations
+     */
+    final int iterations;
+
+    /**
+     * Total time of iteration in nanoseconds: the smallest, median and 99th percentile
+     */
+    final long min, median, p99;
+
+    /**
+     * Time of search without setup in nanoseconds: the smallest, median and 99th percentile
+     */
+    final long searchMin, searchMedian, searchP99;
+
+    /**
+     * Median time of setup in nanoseconds
+     */
+    final long setupMedian;
+
+    /**
+     * Computes statistics of measured iterations.
+     *
+     * @param total time of every iteration
+     * @param setup time of setup of every iteration
+     */
+    Timing(long[] total, long[] setup) {
+        if (total.length == 0 || total.length != setup.length) {
+            throw new IllegalArgumentException("Times of at least one iteration are needed");
+        }
+        iterations = total.length;
+        long[] search = new long[iterations];
+        for (int i = 0; i < iterations; i++) {
+            search[i] = total[i] - setup[i];
+        }
+        long[] sortedTotal = total.clone(), sortedSetup = setup.clone();
+        Arrays.sort(sortedTotal);
+        Arrays.sort(sortedSetup);
+        Arrays.sort(search);
+        min = sortedTotal[0];
+        median = percentile(sortedTotal, 50);
+        p99 = percentile(sortedTotal, 99);
+        searchMin = search[0];
+        searchMedian = percentile(search, 50);
+        searchP99 = percentile(search, 99);
+        setupMedian = percentile(sortedSetup, 50);
+    }
+
+    /**
+     * Runs search several times without measuring, then measures the given amount of iterations.
+     *
+     * @param search     one iteration
+     * @param warmup     amount of iterations that are not measured
+     * @param iterations amount of measured iterations, at least one
+     * @return result of the last iteration with times of measured iterations
+     */
+    static Result measure(java.util.function.Supplier<Result> search, int warmup, int iterations) {
+        if (warmup < 0 || iterations < 1) {
+            throw new IllegalArgumentException("warmup must not be negative and iterations must be positive");
+        }
+        for (int i = 0; i < warmup; i++) {
+            search.get();
+        }
+        long[] total = new long[iterations], setup = new long[iterations];
+        Result result = null;
+        for (int i = 0; i < iterations; i++) {
+            result = search.get();
+            total[i] = result.getAmountTimeForExecution();
+            setup[i] = result.getStats().setupNanos;
+        }
+        return result.withTiming(new Timing(total, setup));
+    }
+
+    /**
+     * Percentile by nearest rank.
+     *
+     * @param sorted  times in ascending order
+     * @param percent from 1 to 100
+     * @return the smallest time that is not less than given percent of times
+     */
+    private static long percentile(long[] sorted, int percent) {
+        int rank = (int) ((long) percent * sorted.length + 99) / 100;
+        return sorted[max(0, rank - 1)];
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d iterations: min %.3f ms, median %.3f ms, p99 %.3f ms (search min %.3f ms, median %.3f ms, p99 %.3f ms, setup median %.3f ms)",
+                iterations, min / 1e6, median / 1e6, p99 / 1e6, searchMin / 1e6, searchMedian / 1e6, searchP99 / 1e6, setupMedian / 1e6);
+    }
+}
+
+/**
+ * Counters of one search or of a route made of several searches. The main loops of A* and Backtracking
+ * count in local variables and write the counters once when search is over, so counting costs almost nothing.
+ * Other algorithms count only expanded states.
+ */
+final class SearchStats {
+    /**
+     * Amount of states taken from the open list (or stack) and expanded
+     */
+    long expanded;
+
+    /**
+     * Amount of states put to the open list (or stack), including changes of priority
+     */
+    long pushed;
+
+    /**
+     * Amount of states taken from the open list (or stack) that had already been reached by a shorter path
+     */
+    long stalePops;
+
+    /**
+     * Amount of states that were reached by a shorter path after they had been expanded
+     */
+    long reopened;
+
+    /**
+     * Amount of expansions of states that had been already expanded during the same solve (iterative deepening)
+     */
+    long reexpanded;
+
+    /**
+     * Largest size of the open list (or stack)
+     */
+    long peakOpen;
+
+    /**
+     * Amount of expansions where Jack kills Kraken before the next move
+     */
+    long krakenKills;
+
+    /**
+     * Time of search in nanoseconds
+     */
+    long nanos;
+
+    /**
+     * Part of time spent before the search itself: preparing tables, allocating and filling arrays
+     */
+    long setupNanos;
+
+    /**
+     * Time of every leg of route in nanoseconds (empty for one search)
+     */
+    long[] legNanos = new long[0];
+
+    /**
+     * Copies counters.
+     *
+     * @return new instance with the same counters
+     */
+    SearchStats copy() {
+        SearchStats copy = new SearchStats();
+        copy.copyFrom(this);
+        return copy;
+    }
+
+    /**
+     * Replaces counters by counters of other search.
+     *
+     * @param other counters
+     */
+    void copyFrom(SearchStats other) {
+        expanded = other.expanded;
+        pushed = other.pushed;
+        stalePops = other.stalePops;
+        reopened = other.reopened;
+        reexpanded = other.reexpanded;
+        peakOpen = other.peakOpen;
+        krakenKills = other.krakenKills;
+        nanos = other.nanos;
+        setupNanos = other.setupNanos;
+        legNanos = other.legNanos.clone();
+    }
+
+    /**
+     * Adds counters of other search, peak of open list is the largest of them.
+     *
+     * @param other counters
+     */
+    private void add(SearchStats other) {
+        expanded += other.expanded;
+        pushed += other.pushed;
+        stalePops += other.stalePops;
+        reopened += other.reopened;
+        reexpanded += other.reexpanded;
+        peakOpen = max(peakOpen, other.peakOpen);
+        krakenKills += other.krakenKills;
+    }
+
+    /**
+     * Joins counters of legs of route, times of legs are kept one by one.
+     *
+     * @param legs counters of searches of route
+     * @return counters of route
+     */
+    static SearchStats ofRoute(SearchStats... legs) {
+        SearchStats route = new SearchStats();
+        route.legNanos = new long[legs.length];
+        for (int i = 0; i < legs.length; i++) {
+            route.add(legs[i]);
+            route.nanos += legs[i].nanos;
+            route.setupNanos += legs[i].setupNanos;
+            route.legNanos[i] = legs[i].nanos;
+        }
+        return route;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("expanded %d, pushed %d, stale %d, reopened %d, reexpanded %d, peak open %d, kraken kills %d, setup %d ns, legs %s ns",
+                expanded, pushed, stalePops, reopened, reexpanded, peakOpen, krakenKills, setupNanos, Arrays.toString(legNanos));
+    }
+}
+
+/**
+ * Flight recorder event of one search, committed by {@link SearchAlgorithm#finish(SolveEvent, long)}.
+ * When recording is off the event is not committed and its fields are not filled.
+ */
+@jdk.jfr.Name("AntonNekhaev.Solve")
+@jdk.jfr.Label("Search")
+@jdk.jfr.Category("Anton Nekhaev")
+@jdk.jfr.StackTrace(false)
+class SolveEvent extends jdk.jfr.Event {
+    /**
+     * Simple name of algorithm class
+     */
+    @jdk.jfr.Label("Algorithm")
+    String algorithm;
+
+    /**
+     * Number of scenario
+     */
+    @jdk.jfr.Label("Scenario")
+    int scenario;
+
+    /**
+     * Amount of cells of board
+     */
+    @jdk.jfr.Label("Cells")
+    int cells;
+
+    /**
+     * Start and finish of search
+     */
+    @jdk.jfr.Label("From X")
+    int fromX;
+    @jdk.jfr.Label("From Y")
+    int fromY;
+    @jdk.jfr.Label("Finish X")
+    int finishX;
+    @jdk.jfr.Label("Finish Y")
+    int finishY;
+
+    /**
+     * Length of found path (INF if there is no path)
+     */
+    @jdk.jfr.Label("Path Length")
+    int pathLength;
+
+    /**
+     * Counters, see {@link SearchStats}
+     */
+    @jdk.jfr.Label("Expanded")
+    long expanded;
+    @jdk.jfr.Label("Pushed")
+    long pushed;
+    @jdk.jfr.Label("Stale Pops")
+    long stalePops;
+    @jdk.jfr.Label("Reopened")
+    long reopened;
+    @jdk.jfr.Label("Peak Open")
+    long peakOpen;
+    @jdk.jfr.Label("Kraken Kills")
+    long krakenKills;
+}
+
+/**
+ * Flight recorder event of building a board: generation of random map, checking of placed actors
+ * or building of bit planes.
+ */
+@jdk.jfr.Name("AntonNekhaev.Board")
+@jdk.jfr.Label("Board")
+@jdk.jfr.Category("Anton Nekhaev")
+@jdk.jfr.StackTrace(false)
+class BoardEvent extends jdk.jfr.Event {
+    /**
+     * What is built: "generate", "place" or "planes"
+     */
+    @jdk.jfr.Label("Phase")
+    String phase;
+
+    /**
+     * Size of board
+     */
+    @jdk.jfr.Label("Rows")
+    int rows;
+    @jdk.jfr.Label("Columns")
+    int columns;
+
+    /**
+     * Commits event if recording is on.
+     *
+     * @param phase   what is built
+     * @param rows    of board
+     * @param columns of board
+     */
+    void end(String phase, int rows, int columns) {
+        if (shouldCommit()) {
+            this.phase = phase;
+            this.rows = rows;
+            this.columns = columns;
+            commit();
+        }
+    }
+}
+
+/**
+ * Path of Jack as a compact array of cells, every cell is packed in one int as x * columns + y.
+ * Consecutive cells are neighbours, so the length of path is the amount of cells minus one.
+ */
+final class Path {
+    /**
+     * Packed cells of path
+     */
+    private final int[] cells;
+
+    /**
+     * Amount of columns of board, used for unpacking
+     */
+    private final int columns;
+
+    /**
+     * Constructor for path.
+     *
+     * @param cells   packed cells of path
+     * @param columns amount of columns of board
+     */
+    Path(int[] cells, int columns) {
+        this.cells = cells;
+        this.columns = columns;
+    }
+
+    /**
+     * Amount of cells in path.
+     *
+     * @return amount of cells
+     */
+    int size() {
+        return cells.length;
+    }
+
+    /**
+     * Length of path (amount of steps).
+     *
+     * @return amount of cells minus one
+     */
+    int length() {
+        return cells.length - 1;
+    }
+
+    /**
+     * Coordinate x of i-th cell.
+     *
+     * @param i number of cell in path
+     * @return x coordinate
+     */
+    int x(int i) {
+        return cells[i] / columns;
+    }
+
+    /**
+     * Coordinate y of i-th cell.
+     *
+     * @param i number of cell in path
+     * @return y coordinate
+     */
+    int y(int i) {
+        return cells[i] % columns;
+    }
+
+    /**
+     * Path with the same cells in backward order.
+     *
+     * @return new path
+     */
+    Path reverse() {
+        int[] reversed = new int[cells.length];
+        for (int i = 0; i < cells.length; i++) {
+            reversed[i] = cells[cells.length - 1 - i];
+        }
+        return new Path(reversed, columns);
+    }
+
+    /**
+     * Joins two legs of route: the other path must start in the last cell of this path, the cell is taken once.
+     *
+     * @param other path from the last cell of this path
+     * @return new path
+     */
+    Path concat(Path other) {
+        if (cells[cells.length - 1] != other.cells[0]) {
+            throw new IllegalArgumentException("Paths do not share a cell");
+        }
+        int[] joined = Arrays.copyOf(cells, cells.length + other.cells.length - 1);
+        System.arraycopy(other.cells, 1, joined, cells.length, other.cells.length - 1);
+        return new Path(joined, columns);
+    }
+}
+
+/**
+ * Implementation of A* algorithm
+ */
+class AStar extends SearchAlgorithm {
+    /**
+     * Factory that creates open list for given amount of states
+     */
+    private final java.util.function.IntFunction<OpenList> openListFactory;
+
+    /**
+     * Open list of states, reused between solves on boards of the same size
+     */
+    private OpenList open;
+
+    /**
+     * Length of the shortest known path to every state
+     */
+    private int[] g;
+
+    /**
+     * Previous state on the shortest known path to every state (-1 for the start)
+     */
+    private int[] parent;
+
+    /**
+     * Constructor for A* algorithm
+     *
+     * @param scenario number of scenario
+     */
+    AStar(int scenario) {
+        this(scenario, BucketQueue::new);
+    }
+
+    /**
+     * Constructor for A* algorithm with custom open list.
+     *
+     * @param scenario        number of scenario
+     * @param openListFactory creates open list for given amount of states, for example BucketQueue::new or IndexedHeap::new
+     */
+    AStar(int scenario, java.util.function.IntFunction<OpenList> openListFactory) {
+        this.scenario = scenario;
+        this.openListFactory = openListFactory;
+    }
+
+    @Override
+    SearchAlgorithm newInstance() {
+        return new AStar(scenario, openListFactory);
+    }
+
+    /**
+     * Getter for path length.
+     *
+     * @return INF if there is no path else path length
+     */
+    public int getPathLength() {
+        return pathLength;
+    }
+
+    @Override
+    boolean searchesAllLayers() {
+        return true;
+    }
+
+    /**
+     * Caller for function that solves the problem when Jack starts from (from_x, from_y) to (finish_x, finish_y).
+     *
+     * @param from_x   coordinate
+     * @param from_y   coordinate
+     * @param finish_x coordinate
+     * @param finish_y coordinate
+     * @param shifts   array of shift for Jack movement with respect to (x, y)
+     * @param planes   of board for which we solve the problem
+     * @return instance of Result class
+     */
+    public Result solve(int from_x, int from_y, int finish_x, int finish_y, ArrayList<Tuple<Integer>> shifts, BitBoard planes) {
+        SolveEvent event = new SolveEvent();
+        event.begin();
+        long startTime = System.nanoTime();
+        prepare(from_x, from_y, finish_x, finish_y, shifts, planes);
+        long states = (long) PackedState.SLOTS * planes.cells;
+        if (states > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Board is too big for A*");
+        }
+        if (g == null || g.length != states) {
+            open = openListFactory.apply((int) states);
+            g = new int[(int) states];
+            parent = new int[(int) states];
+        } else {
+            open.clear();
+        }
+        Arrays.fill(g, Constants.INF);
+        stats.setupNanos = System.nanoTime() - startTime;
+
+        int found = solvePrivate();
+        pathLength = found < 0 ? Constants.INF : g[found];
+        path = found < 0 ? null : getPath(parent, found);
+        return finish(event, startTime);
+    }
+
+    /**
+     * Private solve function that is called by method solve.
+     * The open list holds ids of states (see {@link PackedState}) with priority f = g + h.
+     * Open list changes priority of states that are already in it, so there are no stale pops.
+     *
+     * @return id of the state in finish cell, or -1 if finish can not be reached
+     */
+    public int solvePrivate() {
+        int cells = planes.cells;
+        int[] offsets = moves.offsets, middles = moves.middles, costs = moves.costs;
+        int start = planes.index(from_x, from_y);
+        int target = planes.index(finish_x, finish_y);
+        long expanded = 0, pushed = 1, reopened = 0, krakenKills = 0;
+        int peakOpen = 1;
+        g[start] = 0;
+        parent[start] = -1;
+        open.push(start, h(from_x, from_y, finish_x, finish_y));
+        int found = -1;
+        while (!open.isEmpty()) {
+            int id = open.poll();
+            int slot = id < cells ? 0 : id < 2 * cells ? 1 : 2;
+            int cell = id - slot * cells;
+            if (cell == target) {
+                found = id;
+                break;
+            }
+            expanded++;
+
+            // Jack takes a cask in Tortuga and kills Kraken near his "heart" before the next move
+            int layer = planes.layerAfter(PackedState.layerOfSlot(slot), cell);
+            if (layer == 3 && slot == 1) {
+                krakenKills++;
+            }
+            int base = PackedState.slot(layer) * cells;
+            int passable = BitBoard.passablePlane(layer);
+            int currentG = g[id];
+
+            for (int k = 0; k < offsets.length; k++) {
+                int next = cell + offsets[k];
+                if (!planes.test(passable, next) || !planes.test(passable, cell + middles[k])) {
+                    continue;
+                }
+                int nextId = base + next;
+                int nextG = currentG + costs[k];
+                if (g[nextId] > nextG) {
+                    if (g[nextId] != Constants.INF && !open.contains(nextId)) {
+                        reopened++;
+                    }
+                    g[nextId] = nextG;
+                    parent[nextId] = id;
+                    open.push(nextId, nextG + h(planes.x(next), planes.y(next), finish_x, finish_y));
+                    pushed++;
+                }
+            }
+            peakOpen = max(peakOpen, open.size());
+        }
+        stats.expanded = expanded;
+        stats.pushed = pushed;
+        stats.stalePops = 0;
+        stats.reopened = reopened;
+        stats.peakOpen = peakOpen;
+        stats.krakenKills = krakenKills;
+        return found;
+    }
+
+}
+
+/**
+ * Implementation of bidirectional A* algorithm. One search goes forward from Jack, the other goes backward
+ * from the finish cell in all layers at once (Jack can reach the finish with or without cask and Kraken).
+ * Searches take turns by the size of their open lists and stop when the smallest f in one of the open lists
+ * is not less than the best path through a state reached by both searches.
+ * This is not a faster mode: the Chebyshev heuristic is almost exact on open boards, so plain A* goes nearly straight
+ * to the finish, while two searches must both grow until their bounds meet. On 512x512 boards it expands about
+ * 1.5-2 times more states than {@link AStar} and takes several times longer, so it is kept as a reference
+ * implementation for the benchmark and not as a replacement of A*.
+ */
+class BidirectionalAStar extends SearchAlgorithm {
+    /**
+     * Factory that creates open list for given amount of states
+     */
+    private final java.util.function.IntFunction<OpenList> openListFactory;
+
+    /**
+     * Open lists of forward and backward search
+     */
+    private OpenList forward, backward;
+
+    /**
+     * Length of the shortest known path from the start and to the finish for every state
+     */
+    private int[] gForward, gBackward;
+
+    /**
+     * Previous state of forward search and next state of backward search for every state (-1 at the ends)
+     */
+    private int[] parentForward, parentBackward;
+
+    /**
+     * Constructor for bidirectional A* algorithm
+     *
+     * @param scenario number of scenario
+     */
+    BidirectionalAStar(int scenario) {
+        this(scenario, BucketQueue::new);
+    }
+
+    /**
+     * Constructor for bidirectional A* algorithm with custom open lists.
+     *
+     * @param scenario        number of scenario
+     * @param openListFactory creates open list for given amount of states, for example BucketQueue::new or IndexedHeap::new
+     */
+    BidirectionalAStar(int scenario, java.util.function.IntFunction<OpenList> openListFactory) {
+        this.scenario = scenario;
+        this.openListFactory = openListFactory;
+    }
+
+    @Override
+    SearchAlgorithm newInstance() {
+        return new BidirectionalAStar(scenario, openListFactory);
+    }
+
+    @Override
+    boolean searchesAllLayers() {
+        return true;
+    }
+
+    /**
+     * Caller for function that solves the problem when Jack starts from (from_x, from_y) to (finish_x, finish_y).
+     *
+     * @param from_x   coordinate
+     * @param from_y   coordinate
+     * @param finish_x coordinate
+     * @param finish_y coordinate
+     * @param shifts   array of shift for Jack movement with respect to (x, y)
+     * @param planes   of board for which we solve the problem
+     * @return instance of Result class
+     */
+    public Result solve(int from_x, int from_y, int finish_x, int finish_y, ArrayList<Tuple<Integer>> shifts, BitBoard planes) {
+        SolveEvent event = new SolveEvent();
+        event.begin();
+        long startTime = System.nanoTime();
+        prepare(from_x, from_y, finish_x, finish_y, shifts, planes);
+        long states = (long) PackedState.SLOTS * planes.cells;
+        if (states > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Board is too big for A*");
+        }
+        if (gForward == null || gForward.length != states) {
+            forward = openListFactory.apply((int) states);
+            backward = openListFactory.apply((int) states);
+            gForward = new int[(int) states];
+            gBackward = new int[(int) states];
+            parentForward = new int[(int) states];
+            parentBackward = new int[(int) states];
+        } else {
+            forward.clear();
+            backward.clear();
+        }
+        Arrays.fill(gForward, Constants.INF);
+        Arrays.fill(gBackward, Constants.INF);
+        stats.expanded = 0;
+        stats.setupNanos = System.nanoTime() - startTime;
+
+        int meeting = solvePrivate();
+        pathLength = meeting < 0 ? Constants.INF : gForward[meeting] + gBackward[meeting];
+        // backward chain from the meeting state is read from the finish, so it is turned around
+        path = meeting < 0 ? null : getPath(parentForward, meeting).concat(getPath(parentBackward, meeting).reverse());
+        return finish(event, startTime);
+    }
+
+    /**
+     * Private solve function that is called by method solve.
+     *
+     * @return id of the state where the shortest path is joined, or -1 if finish can not be reached
+     */
+    private int solvePrivate() {
+        int cells = planes.cells;
+        int start = planes.index(from_x, from_y);
+        int target = planes.index(finish_x, finish_y);
+        gForward[start] = 0;
+        parentForward[start] = -1;
+        forward.push(start, h(from_x, from_y, finish_x, finish_y));
+        for (int slot = 0; slot < PackedState.SLOTS; slot++) {
+            int id = slot * cells + target;
+            gBackward[id] = 0;
+            parentBackward[id] = -1;
+            backward.push(id, h(finish_x, finish_y, from_x, from_y));
+        }
+        if (start == target) {
+            return start;
+        }
+
+        int best = Constants.INF;
+        int meeting = -1;
+        while (!forward.isEmpty() && !backward.isEmpty()) {
+            if (forward.peekPriority() >= best || backward.peekPriority() >= best) {
+                break;
+            }
+            stats.expanded++;
+            int id;
+            if (forward.size() <= backward.size()) {
+                id = expandForward(forward.poll());
+            } else {
+                id = expandBackward(backward.poll());
+            }
+            if (id >= 0 && gForward[id] + gBackward[id] < best) {
+                best = gForward[id] + gBackward[id];
+                meeting = id;
+            }
+        }
+        return meeting;
+    }
+
+    /**
+     * Relaxes moves from the state in forward search.
+     *
+     * @param id of state taken from the forward open list
+     * @return id of improved state that is reached by the backward search with the shortest joined path, or -1
+     */
+    private int expandForward(int id) {
+        int cells = planes.cells;
+        int[] offsets = moves.offsets, middles = moves.middles, costs = moves.costs;
+        int slot = id < cells ? 0 : id < 2 * cells ? 1 : 2;
+        int cell = id - slot * cells;
+
+        // Jack takes a cask in Tortuga and kills Kraken near his "heart" before the next move
+        int layer = planes.layerAfter(PackedState.layerOfSlot(slot), cell);
+        int base = PackedState.slot(layer) * cells;
+        int passable = BitBoard.passablePlane(layer);
+        int currentG = gForward[id];
+
+        int meeting = -1;
+        int best = Constants.INF;
+        for (int k = 0; k < offsets.length; k++) {
+            int next = cell + offsets[k];
+            if (!planes.test(passable, next) || !planes.test(passable, cell + middles[k])) {
+                continue;
+            }
+            int nextId = base + next;
+            int nextG = currentG + costs[k];
+            if (gForward[nextId] > nextG) {
+                gForward[nextId] = nextG;
+                parentForward[nextId] = id;
+                forward.push(nextId, nextG + h(planes.x(next), planes.y(next), finish_x, finish_y));
+                if (gBackward[nextId] != Constants.INF && nextG + gBackward[nextId] < best) {
+                    best = nextG + gBackward[nextId];
+                    meeting = nextId;
+                }
+            }
+        }
+        return meeting;
+    }
+
+    /**
+     * Relaxes moves into the state in backward search. A previous state can have any layer
+     * that turns into the layer of this state in the previous cell, and Jack must be able to stand in it.
+     *
+     * @param id of state taken from the backward open list
+     * @return id of improved state that is reached by the forward search with the shortest joined path, or -1
+     */
+    private int expandBackward(int id) {
+        int cells = planes.cells;
+        int[] offsets = moves.offsets, middles = moves.middles, costs = moves.costs;
+        int slot = id < cells ? 0 : id < 2 * cells ? 1 : 2;
+        int cell = id - slot * cells;
+        int layer = PackedState.layerOfSlot(slot);
+        int passable = BitBoard.passablePlane(layer);
+        int start = planes.index(from_x, from_y);
+        int currentG = gBackward[id];
+        if (!planes.test(passable, cell)) {
+            return -1;
+        }
+
+        int meeting = -1;
+        int best = Constants.INF;
+        for (int k = 0; k < offsets.length; k++) {
+            int previous = cell - offsets[k];
+            if (!planes.test(passable, previous + middles[k])) {
+                continue;
+            }
+            for (int previousSlot = 0; previousSlot < PackedState.SLOTS; previousSlot++) {
+                int previousLayer = PackedState.layerOfSlot(previousSlot);
+                if (planes.layerAfter(previousLayer, previous) != layer) {
+                    continue;
+                }
+                boolean isStart = previous == start && previousLayer == 0;
+                if (!isStart && !planes.test(BitBoard.passablePlane(previousLayer), previous)) {
+                    continue;
+                }
+                int previousId = previousSlot * cells + previous;
+                int previousG = currentG + costs[k];
+                if (gBackward[previousId] > previousG) {
+                    gBackward[previousId] = previousG;
+                    parentBackward[previousId] = id;
+                    backward.push(previousId, previousG + h(planes.x(previous), planes.y(previous), from_x, from_y));
+                    if (gForward[previousId] != Constants.INF && previousG + gForward[previousId] < best) {
+                        best = previousG + gForward[previousId];
+                        meeting = previousId;
+                    }
+                }
+            }
+        }
+        return meeting;
+    }
+}
+
+/**
+ * Implementation of Jump Point Search for scenario 1, where Jack moves like a king and every move costs 1.
+ * Instead of neighbours the search pushes jump points: cells where a straight or diagonal run of cells must turn,
+ * because an obstacle opens a new shortest way (forced neighbour), or where the layer changes (Tortuga and
+ * cells near Kraken "heart") or the finish is reached. Runs inside one layer are searched on one plane,
+ * after a layer change all neighbours are expanded again. Other scenarios are solved by A*.
+ * With precomputed tables (JPS+) the distances to the next jump point in every direction are computed once
+ * per board and layer, so a jump is one look-up instead of a scan.
+ */
+class JumpPointSearch extends SearchAlgorithm {
+    /**
+     * Coordinate x of eight directions, first four are straight
+     */
+    private static final int[] DX = {1, -1, 0, 0, 1, 1, -1, -1};
+
+    /**
+     * Coordinate y of eight directions, first four are straight
+     */
+    private static final int[] DY = {0, 0, 1, -1, 1, -1, 1, -1};
+
+    /**
+     * Mask of all eight directions
+     */
+    private static final int ALL = 0xFF;
+
+    /**
+     * Use tables of jump distances (JPS+)
+     */
+    private final boolean precomputed;
+
+    /**
+     * Search for moves that are not king moves
+     */
+    private final AStar fallback;
+
+    /**
+     * Open list of jump points
+     */
+    private OpenList open;
+
+    /**
+     * Length of the shortest known path to every state
+     */
+    private int[] g;
+
+    /**
+     * Previous jump point on the shortest known path to every state (-1 for the start)
+     */
+    private int[] parent;
+
+    /**
+     * Offsets of eight directions for the current width of planes
+     */
+    private final int[] directions = new int[8];
+
+    /**
+     * Tables of jump distances, shared with the instances for legs of route
+     */
+    private final Tables tables;
+
+    /**
+     * Jump distances of the current board, see {@link Tables#distances}
+     */
+    private short[] distances;
+
+    /**
+     * Constructor for Jump Point Search
+     *
+     * @param scenario number of scenario
+     */
+    JumpPointSearch(int scenario) {
+        this(scenario, false);
+    }
+
+    /**
+     * Constructor for Jump Point Search.
+     *
+     * @param scenario    number of scenario
+     * @param precomputed compute jump distances once per board (JPS+), takes 48 bytes per cell
+     */
+    JumpPointSearch(int scenario, boolean precomputed) {
+        this(scenario, precomputed, new Tables());
+    }
+
+    /**
+     * Constructor for Jump Point Search with tables of another instance.
+     *
+     * @param scenario    number of scenario
+     * @param precomputed compute jump distances once per board (JPS+)
+     * @param tables      tables of jump distances
+     */
+    private JumpPointSearch(int scenario, boolean precomputed, Tables tables) {
+        this.scenario = scenario;
+        this.precomputed = precomputed;
+        this.tables = tables;
+        this.fallback = new AStar(scenario);
+    }
+
+    @Override
+    SearchAlgorithm newInstance() {
+        return new JumpPointSearch(scenario, precomputed, tables);
+    }
+
+    @Override
+    boolean searchesAllLayers() {
+        return true;
+    }
+
+    /**
+     * Caller for function that solves the problem when Jack starts from (from_x, from_y) to (finish_x, finish_y).
+     *
+     * @param from_x   coordinate
+     * @param from_y   coordinate
+     * @param finish_x coordinate
+     * @param finish_y coordinate
+     * @param shifts   array of shift for Jack movement with respect to (x, y)
+     * @param planes   of board for which we solve the problem
+     * @return instance of Result class
+     */
+    public Result solve(int from_x, int from_y, int finish_x, int finish_y, ArrayList<Tuple<Integer>> shifts, BitBoard planes) {
+        if (scenario != 1 || !isKingMoves(shifts)) {
+            Result result = fallback.solve(from_x, from_y, finish_x, finish_y, shifts, planes);
+            pathLength = fallback.pathLength;
+            path = fallback.path;
+            stats.copyFrom(fallback.stats);
+            amountTimeForExecution = fallback.amountTimeForExecution;
+            return result;
+        }
+        SolveEvent event = new SolveEvent();
+        event.begin();
+        long startTime = System.nanoTime();
+        prepare(from_x, from_y, finish_x, finish_y, shifts, planes);
+        long states = (long) PackedState.SLOTS * planes.cells;
+        if (states > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Board is too big for A*");
+        }
+        if (g == null || g.length != states) {
+            // costs of jumps are not bounded by a few units, so the window of bucket queue does not fit
+            open = new IndexedHeap((int) states);
+            g = new int[(int) states];
+            parent = new int[(int) states];
+        } else {
+            open.clear();
+        }
+        Arrays.fill(g, Constants.INF);
+        stats.expanded = 0;
+        stats.setupNanos = System.nanoTime() - startTime;
+        for (int k = 0; k < 8; k++) {
+            directions[k] = DX[k] * planes.stride + DY[k];
+        }
+        if (precomputed) {
+            synchronized (tables) {
+                if (tables.planes != planes || tables.edits != planes.edits()) {
+                    tables.distances = buildTables();
+                    tables.planes = planes;
+                    tables.edits = planes.edits();
+                }
+                distances = tables.distances;
+            }
+        }
+
+        int found = solvePrivate();
+        pathLength = found < 0 ? Constants.INF : g[found];
+        path = found < 0 ? null : getJumpPath(found);
+        return finish(event, startTime);
+    }
+
+    /**
+     * Checks that shifts are the eight king moves.
+     *
+     * @param shifts array of shift for Jack movement with respect to (x, y)
+     * @return true if there are eight different shifts by one cell
+     */
+    private static boolean isKingMoves(ArrayList<Tuple<Integer>> shifts) {
+        int mask = 0;
+        for (Tuple<Integer> shift : shifts) {
+            if (abs(shift.getX()) > 1 || abs(shift.getY()) > 1) {
+                return false;
+            }
+            mask |= 1 << ((shift.getX() + 1) * 3 + shift.getY() + 1);
+        }
+        return shifts.size() == 8 && mask == 0b111101111;
+    }
+
+    /**
+     * Private solve function that is called by method solve.
+     * The open list holds ids of states (see {@link PackedState}) in jump points with priority f = g + h.
+     *
+     * @return id of the state in finish cell, or -1 if finish can not be reached
+     */
+    private int solvePrivate() {
+        int cells = planes.cells;
+        int start = planes.index(from_x, from_y);
+        int target = planes.index(finish_x, finish_y);
+        g[start] = 0;
+        parent[start] = -1;
+        open.push(start, h(from_x, from_y, finish_x, finish_y));
+        while (!open.isEmpty()) {
+            int id = open.poll();
+            int slot = id < cells ? 0 : id < 2 * cells ? 1 : 2;
+            int cell = id - slot * cells;
+            if (cell == target) {
+                return id;
+            }
+            stats.expanded++;
+
+            // Jack takes a cask in Tortuga and kills Kraken near his "heart" before the next move
+            int arrival = PackedState.layerOfSlot(slot);
+            int layer = planes.layerAfter(arrival, cell);
+            int nextSlot = PackedState.slot(layer);
+            int passable = BitBoard.passablePlane(layer);
+            int mask = layer != arrival || parent[id] < 0 ? ALL : successors(cell, parent[id] % cells, passable);
+            int x = planes.x(cell), y = planes.y(cell);
+
+            for (int k = 0; k < 8; k++) {
+                if ((mask & 1 << k) == 0) {
+                    continue;
+                }
+                int next = precomputed ? jumpByTable(cell, k, nextSlot, target) : jump(cell, k, passable, layer, target);
+                if (next < 0) {
+                    continue;
+                }
+                int nextX = planes.x(next), nextY = planes.y(next);
+                int nextId = nextSlot * cells + next;
+                int nextG = g[id] + max(abs(nextX - x), abs(nextY - y));
+                if (g[nextId] > nextG) {
+                    g[nextId] = nextG;
+                    parent[nextId] = id;
+                    open.push(nextId, nextG + h(nextX, nextY, finish_x, finish_y));
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Number of direction.
+     *
+     * @param dx shift by x, from -1 to 1
+     * @param dy shift by y, from -1 to 1
+     * @return number of direction
+     */
+    private static int direction(int dx, int dy) {
+        int k = 0;
+        while (DX[k] != dx || DY[k] != dy) {
+            k++;
+        }
+        return k;
+    }
+
+    /**
+     * Directions that can start a shortest path from the cell that was reached from the parent cell:
+     * the natural ones (the same direction and, for a diagonal, its two straight parts)
+     * and the forced ones that go around an obstacle.
+     *
+     * @param cell     index of cell
+     * @param previous index of parent cell
+     * @param passable plane of passable cells
+     * @return mask of directions
+     */
+    private int successors(int cell, int previous, int passable) {
+        int dx = Integer.signum(planes.x(cell) - planes.x(previous));
+        int dy = Integer.signum(planes.y(cell) - planes.y(previous));
+        int stride = planes.stride;
+        int mask = 1 << direction(dx, dy);
+        if (dx != 0 && dy != 0) {
+            mask |= 1 << direction(dx, 0) | 1 << direction(0, dy);
+            if (!planes.test(passable, cell - dx * stride) && planes.test(passable, cell - dx * stride + dy)) {
+                mask |= 1 << direction(-dx, dy);
+            }
+            if (!planes.test(passable, cell - dy) && planes.test(passable, cell - dy + dx * stride)) {
+                mask |= 1 << direction(dx, -dy);
+            }
+        } else {
+            for (int side = -1; side <= 1; side += 2) {
+                int sx = dx == 0 ? side : dx, sy = dy == 0 ? side : dy;
+                int aside = dx == 0 ? side * stride : side;
+                if (!planes.test(passable, cell + aside) && planes.test(passable, cell + sx * stride + sy)) {
+                    mask |= 1 << direction(sx, sy);
+                }
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Checks if the cell reached by a straight move has a forced neighbour.
+     *
+     * @param cell     index of cell
+     * @param k        number of straight direction
+     * @param passable plane of passable cells
+     * @return true if an obstacle on a side of the cell ends after it
+     */
+    private boolean hasForcedStraight(int cell, int k, int passable) {
+        int d = directions[k];
+        int aside = DY[k] == 0 ? 1 : planes.stride;
+        return !planes.test(passable, cell + aside) && planes.test(passable, cell + aside + d)
+                || !planes.test(passable, cell - aside) && planes.test(passable, cell - aside + d);
+    }
+
+    /**
+     * Checks if the cell reached by a diagonal move has a forced neighbour.
+     *
+     * @param cell     index of cell
+     * @param k        number of diagonal direction
+     * @param passable plane of passable cells
+     * @return true if a cell behind the move is blocked and the cell next to it is passable
+     */
+    private boolean hasForcedDiagonal(int cell, int k, int passable) {
+        int backX = DX[k] * planes.stride, backY = DY[k];
+        return !planes.test(passable, cell - backX) && planes.test(passable, cell - backX + backY)
+                || !planes.test(passable, cell - backY) && planes.test(passable, cell - backY + backX);
+    }
+
+    /**
+     * Goes from the cell in the direction until a jump point.
+     *
+     * @param cell     index of cell
+     * @param k        number of direction
+     * @param passable plane of passable cells
+     * @param layer    cask and Kraken flags
+     * @param target   index of finish cell
+     * @return index of jump point, or -1 if an obstacle is reached first
+     */
+    private int jump(int cell, int k, int passable, int layer, int target) {
+        int d = directions[k];
+        boolean straight = k < 4;
+        int alongX = straight ? k : direction(DX[k], 0), alongY = straight ? k : direction(0, DY[k]);
+        for (int next = cell + d; ; next += d) {
+            if (!planes.test(passable, next)) {
+                return -1;
+            }
+            if (next == target || planes.layerAfter(layer, next) != layer) {
+                return next;
+            }
+            if (straight) {
+                if (hasForcedStraight(next, k, passable)) {
+                    return next;
+                }
+            } else if (hasForcedDiagonal(next, k, passable)
+                    || jump(next, alongX, passable, layer, target) >= 0
+                    || jump(next, alongY, passable, layer, target) >= 0) {
+                return next;
+            }
+        }
+    }
+
+    /**
+     * Goes from the cell in the direction until a jump point using tables of jump distances.
+     *
+     * @param cell   index of cell
+     * @param k      number of direction
+     * @param slot   number of layer
+     * @param target index of finish cell
+     * @return index of jump point, or -1 if an obstacle is reached first
+     */
+    private int jumpByTable(int cell, int k, int slot, int target) {
+        int distance = distances[(slot * 8 + k) * planes.cells + cell];
+        int steps = abs(distance);
+        int tx = planes.x(target) - planes.x(cell), ty = planes.y(target) - planes.y(cell);
+        if (k < 4) {
+            // finish on the run of cells
+            int along = DX[k] != 0 ? tx * DX[k] : ty * DY[k];
+            int aside = DX[k] != 0 ? ty : tx;
+            if (aside == 0 && along > 0 && along <= steps) {
+                return target;
+            }
+        } else if (Integer.signum(tx) == DX[k] && Integer.signum(ty) == DY[k]) {
+            // the cell of diagonal run in the row or column of finish
+            int diagonal = min(abs(tx), abs(ty));
+            if (diagonal <= steps) {
+                return cell + diagonal * directions[k];
+            }
+        }
+        return distance > 0 ? cell + distance * directions[k] : -1;
+    }
+
+    /**
+     * Computes tables of jump distances for all layers and directions.
+     * Every run is computed from its far end, so the distance of the next cell is already known.
+     * The tables are new array, so other instances can still read the tables of previous board.
+     *
+     * @return jump distances
+     */
+    private short[] buildTables() {
+        int cells = planes.cells;
+        if (max(planes.rows, planes.columns) > Short.MAX_VALUE || (long) PackedState.SLOTS * 8 * cells > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Board is too big for jump distances");
+        }
+        short[] distances = new short[PackedState.SLOTS * 8 * cells];
+        for (int slot = 0; slot < PackedState.SLOTS; slot++) {
+            int layer = PackedState.layerOfSlot(slot);
+            int passable = BitBoard.passablePlane(layer);
+            for (int k = 0; k < 8; k++) {
+                int d = directions[k];
+                int table = (slot * 8 + k) * cells;
+                int alongX = k < 4 ? table : (slot * 8 + direction(DX[k], 0)) * cells;
+                int alongY = k < 4 ? table : (slot * 8 + direction(0, DY[k])) * cells;
+                for (int i = 0; i < cells; i++) {
+                    int cell = d > 0 ? cells - 1 - i : i;
+                    int next = cell + d;
+                    int distance;
+                    if (!planes.test(passable, cell) || !planes.test(passable, next)) {
+                        distance = 0;
+                    } else if (planes.layerAfter(layer, next) != layer
+                            || (k < 4 ? hasForcedStraight(next, k, passable) : hasForcedDiagonal(next, k, passable)
+                            || distances[alongX + next] > 0 || distances[alongY + next] > 0)) {
+                        distance = 1;
+                    } else {
+                        int after = distances[table + next];
+                        distance = after > 0 ? after + 1 : after - 1;
+                    }
+                    distances[table + cell] = (short) distance;
+                }
+            }
+        }
+        return distances;
+    }
+
+    /**
+     * Function for reconstruct the path from the chain of jump points, filling the runs between them.
+     *
+     * @param id of the last state of path
+     * @return path
+     */
+    private Path getJumpPath(int id) {
+        int cells = planes.cells;
+        int[] path = new int[g[id] + 1];
+        int position = path.length - 1;
+        int cell = id % cells;
+        for (int i = id; parent[i] >= 0; i = parent[i]) {
+            int previous = parent[i] % cells;
+            int d = Integer.signum(planes.x(cell) - planes.x(previous)) * planes.stride
+                    + Integer.signum(planes.y(cell) - planes.y(previous));
+            for (; cell != previous; cell -= d) {
+                path[position--] = planes.number(cell);
+            }
+        }
+        path[position] = planes.number(cell);
+        return new Path(path, planes.columns);
+    }
+
+    /**
+     * Tables of jump distances of one board, guarded by its own lock.
+     */
+    private static final class Tables {
+        /**
+         * Planes the jump distances are computed for and their amount of edits at that time
+         */
+        BitBoard planes;
+        long edits;
+
+        /**
+         * Jump distances by (slot * 8 + direction) * cells + cell: d > 0 - there is a jump point d cells away,
+         * d <= 0 - there is no jump point and -d cells can be passed before an obstacle
+         */
+        short[] distances;
+    }
+}
+
+/**
+ * Implementation of IDA* algorithm with memory that does not depend on the size of board.
+ * Depth-first searches with growing bound of f = g + h are repeated until the finish is reached,
+ * the bound of the next search is the smallest f that was cut off. The path is kept in an explicit stack.
+ * A transposition table of fixed capacity remembers the smallest g of states reached in the current search,
+ * so states reached again by a path that is not shorter are cut. Entries are marked by the number of search,
+ * so the table is not cleared between searches, and when the table is full the entry with the biggest g is replaced
+ * (then some states are expanded again, but paths are still the shortest).
+ */
+class IterativeDeepeningAStar extends SearchAlgorithm {
+    /**
+     * Default amount of entries in transposition table (12 MB)
+     */
+    static final int DEFAULT_TABLE_CAPACITY = 1 << 20;
+
+    /**
+     * Amount of entries checked for every state
+     */
+    private static final int PROBES = 4;
+
+    /**
+     * State ids of entries of transposition table
+     */
+    private final int[] tableId;
+
+    /**
+     * Smallest g of entries of transposition table
+     */
+    private final int[] tableG;
+
+    /**
+     * Number of search that wrote the entry, entries of previous searches are free
+     */
+    private final int[] tableStamp;
+
+    /**
+     * Number of current search
+     */
+    private int stamp;
+
+    /**
+     * Shift of multiplicative hash, so the hash has as many bits as the number of entry
+     */
+    private final int hashShift;
+
+    /**
+     * Stack of states of the current path: id, g, layer before the next move and number of the next move
+     */
+    private int[] stackId = new int[64], stackG = new int[64], stackLayer = new int[64], stackMove = new int[64];
+
+    /**
+     * Amount of states in stack
+     */
+    private int depth;
+
+    /**
+     * Smallest f that was greater than the bound in the current search
+     */
+    private int nextBound;
+
+    /**
+     * Amount of expansions in the current search of states that were not expanded in it before
+     */
+    private long firstExpansions;
+
+    /**
+     * Constructor for IDA* algorithm with default transposition table
+     *
+     * @param scenario number of scenario
+     */
+    IterativeDeepeningAStar(int scenario) {
+        this(scenario, DEFAULT_TABLE_CAPACITY);
+    }
+
+    /**
+     * Constructor for IDA* algorithm.
+     *
+     * @param scenario      number of scenario
+     * @param tableCapacity amount of entries in transposition table (rounded up to a power of two), 12 bytes each
+     */
+    IterativeDeepeningAStar(int scenario, int tableCapacity) {
+        if (tableCapacity < PROBES || tableCapacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity of transposition table must be from " + PROBES + " to 2^30");
+        }
+        int capacity = Integer.highestOneBit(tableCapacity - 1) << 1;
+        this.scenario = scenario;
+        tableId = new int[capacity];
+        tableG = new int[capacity];
+        tableStamp = new int[capacity];
+        hashShift = 32 - Integer.numberOfTrailingZeros(capacity);
+    }
+
+    @Override
+    SearchAlgorithm newInstance() {
+        return new IterativeDeepeningAStar(scenario, tableId.length);
+    }
+
+    @Override
+    boolean searchesAllLayers() {
+        return true;
+    }
+
+    /**
+     * Caller for function that solves the problem when Jack starts from (from_x, from_y) to (finish_x, finish_y).
+     *
+     * @param from_x   coordinate
+     * @param from_y   coordinate
+     * @param finish_x coordinate
+     * @param finish_y coordinate
+     * @param shifts   array of shift for Jack movement with respect to (x, y)
+     * @param planes   of board for which we solve the problem
+     * @return instance of Result class
+     */
+    public Result solve(int from_x, int from_y, int finish_x, int finish_y, ArrayList<Tuple<Integer>> shifts, BitBoard planes) {
+        SolveEvent event = new SolveEvent();
+        event.begin();
+        long startTime = System.nanoTime();
+        prepare(from_x, from_y, finish_x, finish_y, shifts, planes);
+        if ((long) PackedState.SLOTS * planes.cells > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Board is too big for IDA*");
+        }
+        stats.expanded = 0;
+        stats.setupNanos = System.nanoTime() - startTime;
+
+        boolean found = false;
+        int bound = h(from_x, from_y, finish_x, finish_y);
+        while (bound != Constants.INF && !found) {
+            nextStamp();
+            firstExpansions = 0;
+            found = search(bound);
+            bound = nextBound;
+        }
+        // every expansion except the first ones of the last search repeats an earlier one
+        stats.reexpanded = stats.expanded - firstExpansions;
+        pathLength = found ? stackG[depth - 1] : Constants.INF;
+        path = found ? getStackPath() : null;
+        return finish(event, startTime);
+    }
+
+    /**
+     * Getter for amount of re-expansions.
+     *
+     * @return amount of expansions of states that had been already expanded during the last solve
+     */
+    long getReexpanded() {
+        return stats.reexpanded;
+    }
+
+    /**
+     * Starts the next search, so all entries of transposition table become free.
+     */
+    private void nextStamp() {
+        if (stamp == Integer.MAX_VALUE) {
+            Arrays.fill(tableStamp, 0);
+            stamp = 0;
+        }
+        stamp++;
+    }
+
+    /**
+     * Depth-first search with bound of f. When the finish is reached the stack holds the path.
+     *
+     * @param bound biggest f of expanded states
+     * @return true if the finish is reached
+     */
+    private boolean search(int bound) {
+        int cells = planes.cells;
+        int[] offsets = moves.offsets, middles = moves.middles, costs = moves.costs;
+        int start = planes.index(from_x, from_y);
+        int target = planes.index(finish_x, finish_y);
+        nextBound = Constants.INF;
+        depth = 0;
+        push(start, 0);
+        if (start == target) {
+            return true;
+        }
+        remember(start, 0);
+        stats.expanded++;
+        while (depth > 0) {
+            int top = depth - 1;
+            int k = stackMove[top]++;
+            if (k == offsets.length) {
+                depth--;
+                continue;
+            }
+            int cell = stackId[top] % cells;
+            int layer = stackLayer[top];
+            int passable = BitBoard.passablePlane(layer);
+            int next = cell + offsets[k];
+            if (!planes.test(passable, next) || !planes.test(passable, cell + middles[k])) {
+                continue;
+            }
+            int nextId = PackedState.slot(layer) * cells + next;
+            int nextG = stackG[top] + costs[k];
+            int f = nextG + h(planes.x(next), planes.y(next), finish_x, finish_y);
+            if (f > bound) {
+                nextBound = min(nextBound, f);
+                continue;
+            }
+            if (next == target) {
+                push(nextId, nextG);
+                return true;
+            }
+            if (remember(nextId, nextG)) {
+                push(nextId, nextG);
+                stats.expanded++;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Puts state on the top of stack.
+     *
+     * @param id of state
+     * @param g  path length to state
+     */
+    private void push(int id, int g) {
+        if (depth == stackId.length) {
+            int capacity = depth * 2;
+            stackId = Arrays.copyOf(stackId, capacity);
+            stackG = Arrays.copyOf(stackG, capacity);
+            stackLayer = Arrays.copyOf(stackLayer, capacity);
+            stackMove = Arrays.copyOf(stackMove, capacity);
+        }
+        int cells = planes.cells;
+        int slot = id < cells ? 0 : id < 2 * cells ? 1 : 2;
+        stackId[depth] = id;
+        stackG[depth] = g;
+        // Jack takes a cask in Tortuga and kills Kraken near his "heart" before the next move
+        stackLayer[depth] = planes.layerAfter(PackedState.layerOfSlot(slot), id - slot * cells);
+        stackMove[depth] = 0;
+        depth++;
+    }
+
+    /**
+     * Writes g of state to transposition table if it is smaller than the known one.
+     *
+     * @param id of state
+     * @param g  path length to state
+     * @return false if the state was already reached in the current search with not greater g
+     */
+    private boolean remember(int id, int g) {
+        int mask = tableId.length - 1;
+        int hash = (id * 0x9E3779B9) >>> hashShift;
+        int victim = -1;
+        for (int probe = 0; probe < PROBES; probe++) {
+            int entry = (hash + probe) & mask;
+            if (tableStamp[entry] != stamp) {
+                if (victim < 0 || tableStamp[victim] == stamp) {
+                    victim = entry;
+                }
+                continue;
+            }
+            if (tableId[entry] == id) {
+                if (tableG[entry] <= g) {
+                    return false;
+                }
+                tableG[entry] = g;
+                return true;
+            }
+            if (victim < 0 || tableStamp[victim] == stamp && tableG[victim] < tableG[entry]) {
+                victim = entry;
+            }
+        }
+        if (tableStamp[victim] != stamp) {
+            firstExpansions++;
+        }
+        tableId[victim] = id;
+        tableG[victim] = g;
+        tableStamp[victim] = stamp;
+        return true;
+    }
+
+    /**
+     * Path of states in stack, jumps of scenario 2 are written with the cell in between.
+     *
+     * @return path
+     */
+    private Path getStackPath() {
+        int cells = planes.cells;
+        int[] path = new int[stackG[depth - 1] + 1];
+        int position = 0;
+        int previous = stackId[0] % cells;
+        path[position++] = planes.number(previous);
+        for (int i = 1; i < depth; i++) {
+            int cell = stackId[i] % cells;
+            if (isJump(cell, previous)) {
+                path[position++] = planes.number((cell + previous) / 2);
+            }
+            path[position++] = planes.number(cell);
+            previous = cell;
+        }
+        return new Path(path, planes.columns);
+    }
+}
+
+/**
+ * Cache of reverse distance fields. A field keeps for every state (cell, cask, krakenIsDead) of board the length
+ * of the shortest path from it to one destination cell, so a route from any start to this destination is found
+ * by going to a neighbour state with distance smaller by the cost of move, in time of path length.
+ * A field is computed once by Dijkstra search from the destination backward (in all layers at once) and is kept
+ * in char array (2 bytes per state) when all distances fit, otherwise in int array. The least recently used
+ * fields are evicted when their total size exceeds the limit. Methods are synchronized, so the cache can be
+ * shared by searches in different threads.
+ */
+class DistanceFieldCache {
+    /**
+     * Distance of states from which destination can not be reached in char field
+     */
+    private static final char UNREACHABLE = Character.MAX_VALUE;
+
+    /**
+     * Limit of total size of fields in bytes
+     */
+    private final long maxBytes;
+
+    /**
+     * Fields in order of access, the least recently used first
+     */
+    private final LinkedHashMap<Key, Field> fields = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Total size of fields in bytes
+     */
+    private long bytes;
+
+    /**
+     * Amount of requests answered from cache and amount of computed fields
+     */
+    private long hits, misses;
+
+    /**
+     * Creates empty cache.
+     *
+     * @param maxBytes limit of total size of fields in bytes (the last computed field is kept even if it is bigger)
+     */
+    DistanceFieldCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Gives distance field of destination, computes it if it is not in cache.
+     *
+     * @param planes      of board
+     * @param moves       tables of moves
+     * @param destination index of destination cell
+     * @return distances to destination
+     */
+    synchronized Field field(BitBoard planes, Moves moves, int destination) {
+        Key key = new Key(planes, moves, destination);
+        Field field = fields.get(key);
+        if (field != null) {
+            hits++;
+            return field;
+        }
+        misses++;
+        field = compute(planes, moves, destination);
+        fields.put(key, field);
+        bytes += field.bytes();
+        Iterator<Field> eldest = fields.values().iterator();
+        while (bytes > maxBytes && fields.size() > 1) {
+            bytes -= eldest.next().bytes();
+            eldest.remove();
+        }
+        return field;
+    }
+
+    /**
+     * Removes all fields.
+     */
+    synchronized void clear() {
+        fields.clear();
+        bytes = 0;
+    }
+
+    /**
+     * Total size of fields.
+     *
+     * @return size in bytes
+     */
+    synchronized long bytes() {
+        return bytes;
+    }
+
+    /**
+     * Amount of requests answered from cache.
+     *
+     * @return amount of hits
+     */
+    synchronized long hits() {
+        return hits;
+    }
+
+    /**
+     * Amount of computed fields.
+     *
+     * @return amount of misses
+     */
+    synchronized long misses() {
+        return misses;
+    }
+
+    /**
+     * Computes distance field by Dijkstra search from destination in all layers. A previous state of a state
+     * can have any layer that turns into the layer of this state in the previous cell.
+     *
+     * @param planes      of board
+     * @param moves       tables of moves
+     * @param destination index of destination cell
+     * @return distances to destination
+     */
+    private static Field compute(BitBoard planes, Moves moves, int destination) {
+        int cells = planes.cells;
+        long states = (long) PackedState.SLOTS * cells;
+        if (states > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Board is too big for distance field");
+        }
+        int[] offsets = moves.offsets, middles = moves.middles, costs = moves.costs;
+        int[] distance = new int[(int) states];
+        Arrays.fill(distance, Constants.INF);
+        OpenList open = new BucketQueue((int) states);
+        for (int slot = 0; slot < PackedState.SLOTS; slot++) {
+            distance[slot * cells + destination] = 0;
+            open.push(slot * cells + destination, 0);
+        }
+        int farthest = 0;
+        while (!open.isEmpty()) {
+            int id = open.poll();
+            int slot = id < cells ? 0 : id < 2 * cells ? 1 : 2;
+            int cell = id - slot * cells;
+            int layer = PackedState.layerOfSlot(slot);
+            int passable = BitBoard.passablePlane(layer);
+            int current = distance[id];
+            farthest = current;
+            if (!planes.test(passable, cell)) {
+                // Jack can stand here only at the start, so no move leads here
+                continue;
+            }
+            for (int k = 0; k < offsets.length; k++) {
+                int previous = cell - offsets[k];
+                if (previous < 0 || previous >= cells || !planes.test(passable, previous + middles[k])) {
+                    continue;
+                }
+                for (int previousSlot = 0; previousSlot < PackedState.SLOTS; previousSlot++) {
+                    if (planes.layerAfter(PackedState.layerOfSlot(previousSlot), previous) != layer) {
+                        continue;
+                    }
+                    int previousId = previousSlot * cells + previous;
+                    if (distance[previousId] > current + costs[k]) {
+                        distance[previousId] = current + costs[k];
+                        open.push(previousId, current + costs[k]);
+                    }
+                }
+            }
+        }
+        if (farthest >= UNREACHABLE) {
+            return new Field(null, distance);
+        }
+        char[] compact = new char[distance.length];
+        for (int i = 0; i < distance.length; i++) {
+            compact[i] = distance[i] == Constants.INF ? UNREACHABLE : (char) distance[i];
+        }
+        return new Field(compact, null);
+    }
+
+    /**
+     * Distances from all states to one destination.
+     */
+    static final class Field {
+        /**
+         * Distances if they fit in char (UNREACHABLE for states without path), otherwise null
+         */
+        private final char[] compact;
+
+        /**
+         * Distances if they do not fit in char (INF for states without path), otherwise null
+         */
+        private final int[] wide;
+
+        /**
+         * Creates field from one of arrays.
+         *
+         * @param compact char distances or null
+         * @param wide    int distances or null
+         */
+        Field(char[] compact, int[] wide) {
+            this.compact = compact;
+            this.wide = wide;
+        }
+
+        /**
+         * Distance of state.
+         *
+         * @param id of state
+         * @return length of the shortest path to destination, or INF
+         */
+        int distance(int id) {
+            if (compact == null) {
+                return wide[id];
+            }
+            char distance = compact[id];
+            return distance == UNREACHABLE ? Constants.INF : distance;
+        }
+
+        /**
+         * Size of field.
+         *
+         * @return size of array in bytes
+         */
+        long bytes() {
+            return compact != null ? 2L * compact.length : 4L * wide.length;
+        }
+    }
+
+    /**
+     * Key of field: board (by identity and amount of edits, because bit planes of board change in place), moves and destination.
+     */
+    private static final class Key {
+        /**
+         * Planes of board
+         */
+        private final BitBoard planes;
+
+        /**
+         * Amount of edits of planes when the field was computed
+         */
+        private final long edits;
+
+        /**
+         * Offsets of moves
+         */
+        private final int[] offsets;
+
+        /**
+         * Costs of moves
+         */
+        private final int[] costs;
+
+        /**
+         * Index of destination cell
+         */
+        private final int destination;
+
+        /**
+         * Creates key.
+         *
+         * @param planes      of board
+         * @param moves       tables of moves
+         * @param destination index of destination cell
+         */
+        Key(BitBoard planes, Moves moves, int destination) {
+            this.planes = planes;
+            this.edits = planes.edits();
+            this.offsets = moves.offsets;
+            this.costs = moves.costs;
+            this.destination = destination;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key other)) {
+                return false;
+            }
+            return planes == other.planes && edits == other.edits && destination == other.destination
+                    && Arrays.equals(offsets, other.offsets) && Arrays.equals(costs, other.costs);
+        }
+
+        @Override
+        public int hashCode() {
+            return ((System.identityHashCode(planes) * 31 + Long.hashCode(edits)) * 31 + destination) * 31 + Arrays.hashCode(offsets);
+        }
+    }
+}
+
+/**
+ * Search algorithm that answers from {@link DistanceFieldCache}: the first request to a destination computes its
+ * distance field, the next ones only go down the field from the start, so many starts to the same chest or Tortuga
+ * on one board are cheap.
+ */
+class DistanceFieldSearch extends SearchAlgorithm {
+    /**
+     * Cache of distance fields, can be shared by many instances
+     */
+    private final DistanceFieldCache cache;
+
+    /**
+     * Constructor for search with its own cache of 256 MB
+     *
+     * @param scenario number of scenario
+     */
+    DistanceFieldSearch(int scenario) {
+        this(scenario, new DistanceFieldCache(256L << 20));
+    }
+
+    /**
+     * Constructor for search with shared cache.
+     *
+     * @param scenario number of scenario
+     * @param cache    cache of distance fields
+     */
+    DistanceFieldSearch(int scenario, DistanceFieldCache cache) {
+        this.scenario = scenario;
+        this.cache = cache;
+    }
+
+    @Override
+    SearchAlgorithm newInstance() {
+        return new DistanceFieldSearch(scenario, cache);
+    }
+
+    @Override
+    boolean searchesAllLayers() {
+        return true;
+    }
+
+    /**
+     * Caller for function that solves the problem when Jack starts from (from_x, from_y) to (finish_x, finish_y).
+     *
+     * @param from_x   coordinate
+     * @param from_y   coordinate
+     * @param finish_x coordinate
+     * @param finish_y coordinate
+     * @param shifts   array of shift for Jack movement with respect to (x, y)
+     * @param planes   of board for which we solve the problem
+     * @return instance of Result class
+     */
+    public Result solve(int from_x, int from_y, int finish_x, int finish_y, ArrayList<Tuple<Integer>> shifts, BitBoard planes) {
+        SolveEvent event = new SolveEvent();
+        event.begin();
+        long startTime = System.nanoTime();
+        prepare(from_x, from_y, finish_x, finish_y, shifts, planes);
+        DistanceFieldCache.Field field = cache.field(planes, moves, planes.index(finish_x, finish_y));
+        stats.setupNanos = System.nanoTime() - startTime;
+        int start = planes.index(from_x, from_y);
+        pathLength = field.distance(start);
+        path = pathLength == Constants.INF ? null : walk(field, start);
+        stats.expanded = path == null ? 0 : path.size();
+        return finish(event, startTime);
+    }
+
+    /**
+     * Goes down the distance field from the start: every move leads to a state with distance smaller by its cost.
+     *
+     * @param field distances to finish
+     * @param start index of start cell
+     * @return path
+     */
+    private Path walk(DistanceFieldCache.Field field, int start) {
+        int cells = planes.cells;
+        int[] offsets = moves.offsets, middles = moves.middles, costs = moves.costs;
+        int[] path = new int[field.distance(start) + 1];
+        int position = 0;
+        path[position++] = planes.number(start);
+        int id = start;
+        int distance = field.distance(start);
+        while (distance > 0) {
+            int slot = id < cells ? 0 : id < 2 * cells ? 1 : 2;
+            int cell = id - slot * cells;
+            int layer = planes.layerAfter(PackedState.layerOfSlot(slot), cell);
+            int passable = BitBoard.passablePlane(layer);
+            for (int k = 0; ; k++) {
+                int next = cell + offsets[k];
+                int nextId = PackedState.slot(layer) * cells + next;
+                if (planes.test(passable, next) && planes.test(passable, cell + middles[k])
+                        && field.distance(nextId) == distance - costs[k]) {
+                    if (next != cell + middles[k]) {
+                        path[position++] = planes.number(cell + middles[k]);
+                    }
+                    path[position++] = planes.number(next);
+                    id = nextId;
+                    distance -= costs[k];
+                    break;
+                }
+            }
+        }
+        return new Path(path, planes.columns);
+    }
+}
+
+/**
+ * Incremental implementation of A* (Lifelong Planning A*). The search tree of the last solve (g and rhs of every state,
+ * rhs is the best g through predecessors) is kept, and when the same start and finish are searched again on a changed
+ * board, only the states around changed cells are updated and repaired, instead of searching from scratch.
+ * Board can be changed by any setter of {@link Board} (rock, Davy Jones, Kraken, Tortuga): the setters update its
+ * bit planes in place and list the changed cells (see {@link BitBoard#changesSince(long)}). For other planes changed cells
+ * are found by comparing the planes that define moves (passability, kill zone and Tortuga) with their copy from the last solve.
+ * The three states of finish cell are joined by a virtual goal state, so the route in any layer is found by one search.
+ * The tree is built again when start, finish, moves or size of board change, or when too many cells changed.
+ */
+class LifelongPlanningAStar extends SearchAlgorithm {
+    /**
+     * Planes that define moves, they are copied to find changed cells
+     */
+    private static final int[] WATCHED = {BitBoard.PASSABLE_ALIVE, BitBoard.PASSABLE_DEAD, BitBoard.KILL_ZONE, BitBoard.TORTUGA};
+
+    /**
+     * Part of cells that can change before the tree is built again (1 / REBUILD_RATIO)
+     */
+    private static final int REBUILD_RATIO = 8;
+
+    /**
+     * Length of the shortest path found by expansion to every state (and to the virtual goal with id SLOTS * cells)
+     */
+    private int[] g;
+
+    /**
+     * Length of the shortest path through predecessors of every state
+     */
+    private int[] rhs;
+
+    /**
+     * States where g differs from rhs
+     */
+    private KeyHeap open;
+
+    /**
+     * Copy of watched planes from the last solve, null if there is no tree
+     */
+    private long[][] watched;
+
+    /**
+     * Start and finish cells, offsets and costs of moves of the tree
+     */
+    private int treeStart = -1, treeTarget = -1;
+    private int[] treeOffsets, treeCosts;
+
+    /**
+     * Planes of the last solve and their amount of edits at that time
+     */
+    private BitBoard treePlanes;
+    private long treeEdits;
+
+    /**
+     * Amount of cells that changed before the last solve (-1 if the tree was built from scratch)
+     */
+    private int changedCells;
+
+    /**
+     * Constructor for Lifelong Planning A* algorithm
+     *
+     * @param scenario number of scenario
+     */
+    LifelongPlanningAStar(int scenario) {
+        this.scenario = scenario;
+    }
+
+    @Override
+    SearchAlgorithm newInstance() {
+        return new LifelongPlanningAStar(scenario);
+    }
+
+    @Override
+    boolean searchesAllLayers() {
+        return true;
+    }
+
+    /**
+     * Caller for function that solves the problem when Jack starts from (from_x, from_y) to (finish_x, finish_y).
+     *
+     * @param from_x   coordinate
+     * @param from_y   coordinate
+     * @param finish_x coordinate
+     * @param finish_y coordinate
+     * @param shifts   array of shift for Jack movement with respect to (x, y)
+     * @param planes   of board for which we solve the problem
+     * @return instance of Result class
+     */
+    public Result solve(int from_x, int from_y, int finish_x, int finish_y, ArrayList<Tuple<Integer>> shifts, BitBoard planes) {
+        SolveEvent event = new SolveEvent();
+        event.begin();
+        long startTime = System.nanoTime();
+        prepare(from_x, from_y, finish_x, finish_y, shifts, planes);
+        long states = (long) PackedState.SLOTS * planes.cells + 1;
+        if (states > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Board is too big for LPA*");
+        }
+        int start = planes.index(from_x, from_y);
+        int target = planes.index(finish_x, finish_y);
+        stats.expanded = 0;
+        if (g == null || g.length != states || start != treeStart || target != treeTarget
+                || !Arrays.equals(moves.offsets, treeOffsets) || !Arrays.equals(moves.costs, treeCosts)
+                || !repair()) {
+            build(start, target, (int) states);
+        }
+        stats.setupNanos = System.nanoTime() - startTime;
+
+        computeShortestPath();
+        int goal = g.length - 1;
+        pathLength = g[goal] >= Constants.INF ? Constants.INF : g[goal];
+        path = pathLength == Constants.INF ? null : getPath(this::bestPredecessor, bestTargetState());
+        return finish(event, startTime);
+    }
+
+    /**
+     * Starts a new tree: only the start is consistent.
+     *
+     * @param start  index of start cell
+     * @param target index of finish cell
+     * @param states amount of states with the virtual goal
+     */
+    private void build(int start, int target, int states) {
+        if (g == null || g.length != states) {
+            g = new int[states];
+            rhs = new int[states];
+            open = new KeyHeap(states);
+        } else {
+            open.clear();
+        }
+        Arrays.fill(g, Constants.INF);
+        Arrays.fill(rhs, Constants.INF);
+        treeStart = start;
+        treeTarget = target;
+        treeOffsets = moves.offsets.clone();
+        treeCosts = moves.costs.clone();
+        changedCells = -1;
+        watched = planes.copyPlanes(WATCHED, watched);
+        treePlanes = planes;
+        treeEdits = planes.edits();
+        rhs[start] = 0;
+        open.push(start, key(start));
+    }
+
+    /**
+     * Finds changed cells and updates states around them. Cells edited in place are taken from the planes,
+     * other planes are compared with the copy of watched planes.
+     *
+     * @return false if too many cells changed and the tree should be built again
+     */
+    private boolean repair() {
+        // changed cells are collected first, so a board replaced completely does not update states one by one
+        int limit = planes.cells / REBUILD_RATIO;
+        int[] changed = planes == treePlanes ? planes.changesSince(treeEdits) : null;
+        if (changed != null) {
+            if (changed.length > limit) {
+                return false;
+            }
+            planes.copyCells(WATCHED, watched, changed);
+        } else {
+            changed = planes.changedCells(WATCHED, watched, limit);
+            if (changed == null) {
+                return false;
+            }
+            if (changed.length > 0) {
+                watched = planes.copyPlanes(WATCHED, watched);
+            }
+        }
+        treePlanes = planes;
+        treeEdits = planes.edits();
+        int count = changed.length;
+        changedCells = count;
+        int radius = moveRadius();
+        int cells = planes.cells, stride = planes.stride;
+        for (int i = 0; i < count; i++) {
+            // moves into the cell, over it and out of it end not farther than the longest move
+            for (int dx = -radius; dx <= radius; dx++) {
+                for (int dy = -radius; dy <= radius; dy++) {
+                    int cell = changed[i] + dx * stride + dy;
+                    if (cell < 0 || cell >= cells) {
+                        continue;
+                    }
+                    for (int slot = 0; slot < PackedState.SLOTS; slot++) {
+                        updateState(slot * cells + cell);
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Longest move along x or y.
+     *
+     * @return amount of cells
+     */
+    private int moveRadius() {
+        int radius = 1;
+        for (int offset : moves.offsets) {
+            int dx = (int) Math.round((double) offset / planes.stride);
+            radius = max(radius, max(abs(dx), abs(offset - dx * planes.stride)));
+        }
+        return radius;
+    }
+
+    /**
+     * Key of state in open list: smaller of g and rhs plus heuristic in high bits, tie-break in low bits.
+     * Ties go to larger g, the way AStar breaks them, so a fresh tree goes straight to the finish
+     * instead of widening over all states of equal f. Underconsistent states (g below rhs) go before all others
+     * with equal f: their g can be too small, and they must not stay in the open list when the search stops.
+     *
+     * @param id of state
+     * @return key
+     */
+    private long key(int id) {
+        int distance = min(g[id], rhs[id]);
+        int cells = planes.cells;
+        int estimate = id == g.length - 1 ? 0 : h(planes.x(id % cells), planes.y(id % cells), finish_x, finish_y);
+        int tieBreak = g[id] < rhs[id] ? 0 : Integer.MAX_VALUE - distance;
+        return (long) (distance + estimate) << 32 | tieBreak;
+    }
+
+    /**
+     * Recomputes rhs of state from its predecessors and puts it to the open list if it is inconsistent.
+     *
+     * @param id of state
+     */
+    private void updateState(int id) {
+        if (id != treeStart) {
+            rhs[id] = id == g.length - 1 ? goalRhs() : predecessorsRhs(id);
+        }
+        if (g[id] != rhs[id]) {
+            open.push(id, key(id));
+        } else {
+            open.remove(id);
+        }
+    }
+
+    /**
+     * Best g of the states of finish cell, they are joined with the virtual goal by moves of zero cost.
+     *
+     * @return rhs of the virtual goal
+     */
+    private int goalRhs() {
+        int best = Constants.INF;
+        for (int slot = 0; slot < PackedState.SLOTS; slot++) {
+            best = min(best, g[slot * planes.cells + treeTarget]);
+        }
+        return best;
+    }
+
+    /**
+     * Best g through predecessors of state. Move from (previous, previousLayer) comes to the cell in layer
+     * layerAfter(previousLayer, previous), and both the cell and the middle of move must be passable in that layer.
+     *
+     * @param id of state
+     * @return rhs of state
+     */
+    private int predecessorsRhs(int id) {
+        int cells = planes.cells;
+        int[] offsets = moves.offsets, middles = moves.middles, costs = moves.costs;
+        int slot = id / cells;
+        int cell = id - slot * cells;
+        int layer = PackedState.layerOfSlot(slot);
+        int passable = BitBoard.passablePlane(layer);
+        if (!planes.test(passable, cell)) {
+            return Constants.INF;
+        }
+        int best = Constants.INF;
+        for (int k = 0; k < offsets.length; k++) {
+            int previous = cell - offsets[k];
+            if (previous < 0 || previous >= cells || !planes.test(passable, previous + middles[k])) {
+                continue;
+            }
+            for (int previousSlot = 0; previousSlot < PackedState.SLOTS; previousSlot++) {
+                int previousG = g[previousSlot * cells + previous];
+                if (previousG < Constants.INF && previousG + costs[k] < best
+                        && planes.layerAfter(PackedState.layerOfSlot(previousSlot), previous) == layer) {
+                    best = previousG + costs[k];
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Predecessor of state on the shortest path (the one with the smallest g plus cost of move), used to rebuild the path.
+     *
+     * @param id of state
+     * @return id of predecessor or -1 for the start
+     */
+    private int bestPredecessor(int id) {
+        if (id == treeStart) {
+            return -1;
+        }
+        int cells = planes.cells;
+        int[] offsets = moves.offsets, middles = moves.middles, costs = moves.costs;
+        int slot = id / cells;
+        int cell = id - slot * cells;
+        int layer = PackedState.layerOfSlot(slot);
+        int passable = BitBoard.passablePlane(layer);
+        int best = -1, bestG = Constants.INF;
+        for (int k = 0; k < offsets.length; k++) {
+            int previous = cell - offsets[k];
+            if (previous < 0 || previous >= cells || !planes.test(passable, previous + middles[k])) {
+                continue;
+            }
+            for (int previousSlot = 0; previousSlot < PackedState.SLOTS; previousSlot++) {
+                int previousId = previousSlot * cells + previous;
+                if (g[previousId] < Constants.INF && g[previousId] + costs[k] < bestG
+                        && planes.layerAfter(PackedState.layerOfSlot(previousSlot), previous) == layer) {
+                    best = previousId;
+                    bestG = g[previousId] + costs[k];
+                }
+            }
+        }
+        if (best < 0) {
+            throw new IllegalStateException("State " + id + " has no predecessor on the shortest path");
+        }
+        return best;
+    }
+
+    /**
+     * State of finish cell with the shortest path.
+     *
+     * @return id of state
+     */
+    private int bestTargetState() {
+        int best = treeTarget;
+        for (int slot = 1; slot < PackedState.SLOTS; slot++) {
+            int id = slot * planes.cells + treeTarget;
+            if (g[id] < g[best]) {
+                best = id;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Expands inconsistent states in order of keys until the virtual goal is consistent
+     * and no state with smaller or equal key is inconsistent. States of finish cell have the same key
+     * as the virtual goal (heuristic is zero there), so states with equal keys are expanded too.
+     */
+    private void computeShortestPath() {
+        int goal = g.length - 1;
+        int cells = planes.cells;
+        int[] offsets = moves.offsets, middles = moves.middles;
+        while (!open.isEmpty() && (open.peekKey() <= key(goal) || rhs[goal] != g[goal])) {
+            int id = open.poll();
+            stats.expanded++;
+            if (g[id] > rhs[id]) {
+                g[id] = rhs[id];
+            } else {
+                g[id] = Constants.INF;
+                updateState(id);
+            }
+            if (id == goal) {
+                continue;
+            }
+            int slot = id / cells;
+            int cell = id - slot * cells;
+            if (cell == treeTarget) {
+                updateState(goal);
+            }
+
+            // Jack takes a cask in Tortuga and kills Kraken near his "heart" before the next move
+            int layer = planes.layerAfter(PackedState.layerOfSlot(slot), cell);
+            int base = PackedState.slot(layer) * cells;
+            int passable = BitBoard.passablePlane(layer);
+            for (int k = 0; k < offsets.length; k++) {
+                int next = cell + offsets[k];
+                if (planes.test(passable, next) && planes.test(passable, cell + middles[k])) {
+                    updateState(base + next);
+                }
+            }
+        }
+        stats.peakOpen = max(stats.peakOpen, open.size());
+    }
+
+    /**
+     * Getter for amount of changed cells.
+     *
+     * @return amount of cells that changed before the last solve, or -1 if the tree was built from scratch
+     */
+    int getChangedCells() {
+        return changedCells;
+    }
+
+    /**
+     * Indexed binary heap of state ids with long keys (LPA* compares pairs of numbers, they are packed into one long).
+     */
+    private static final class KeyHeap {
+        /**
+         * Ids in heap order
+         */
+        private final int[] heap;
+
+        /**
+         * Key of every id
+         */
+        private final long[] keys;
+
+        /**
+         * Position of every id in heap, -1 if it is not in heap
+         */
+        private final int[] position;
+
+        /**
+         * Amount of ids in heap
+         */
+        private int size;
+
+        /**
+         * Constructor of heap.
+         *
+         * @param capacity amount of ids
+         */
+        KeyHeap(int capacity) {
+            heap = new int[capacity];
+            keys = new long[capacity];
+            position = new int[capacity];
+            Arrays.fill(position, -1);
+        }
+
+        /**
+         * Removes all ids.
+         */
+        void clear() {
+            for (int i = 0; i < size; i++) {
+                position[heap[i]] = -1;
+            }
+            size = 0;
+        }
+
+        /**
+         * Checks for emptiness.
+         *
+         * @return true if heap is empty
+         */
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        /**
+         * Amount of ids.
+         *
+         * @return size of heap
+         */
+        int size() {
+            return size;
+        }
+
+        /**
+         * Smallest key, the heap must not be empty.
+         *
+         * @return key of the first id
+         */
+        long peekKey() {
+            return keys[heap[0]];
+        }
+
+        /**
+         * Inserts id or changes its key.
+         *
+         * @param id  of state
+         * @param key of state
+         */
+        void push(int id, long key) {
+            int i = position[id];
+            if (i < 0) {
+                i = size++;
+                heap[i] = id;
+                position[id] = i;
+                keys[id] = key;
+                up(i);
+                return;
+            }
+            long old = keys[id];
+            keys[id] = key;
+            if (key < old) {
+                up(i);
+            } else {
+                down(i);
+            }
+        }
+
+        /**
+         * Removes id with the smallest key.
+         *
+         * @return removed id
+         */
+        int poll() {
+            int id = heap[0];
+            remove(id);
+            return id;
+        }
+
+        /**
+         * Removes id if it is in heap.
+         *
+         * @param id of state
+         */
+        void remove(int id) {
+            int i = position[id];
+            if (i < 0) {
+                return;
+            }
+            position[id] = -1;
+            int last = heap[--size];
+            if (i == size) {
+                return;
+            }
+            heap[i] = last;
+            position[last] = i;
+            up(i);
+            down(position[last]);
+        }
+
+        /**
+         * Moves id up while its key is smaller than the key of parent.
+         *
+         * @param i position in heap
+         */
+        private void up(int i) {
+            int id = heap[i];
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (keys[heap[parent]] <= keys[id]) {
+                    break;
+                }
+                heap[i] = heap[parent];
+                position[heap[i]] = i;
+                i = parent;
+            }
+            heap[i] = id;
+            position[id] = i;
+        }
+
+        /**
+         * Moves id down while its key is greater than the key of a child.
+         *
+         * @param i position in heap
+         */
+        private void down(int i) {
+            int id = heap[i];
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && keys[heap[child + 1]] < keys[heap[child]]) {
+                    child++;
+                }
+                if (keys[heap[child]] >= keys[id]) {
+                    break;
+                }
+                heap[i] = heap[child];
+                position[heap[i]] = i;
+                i = child;
+            }
+            heap[i] = id;
+            position[id] = i;
+        }
+    }
+}
+
+/**
+ * Hierarchical path-finding A* (HPA*). The board is split into square clusters, and neighbouring clusters
+ * are joined by entrances: pairs of free cells on both sides of their common border (one pair in the middle of every
+ * free segment of border, or two pairs at its ends if the segment is long). For every cluster the distances between
+ * its entrance states (entrance cell and layer, see {@link PackedState}) are found by searches that stay inside
+ * the cluster, so a route is first searched in the small graph of entrance states. Distances of a cluster are computed
+ * when a search reaches it for the first time and are kept until the board changes: changed cells are found
+ * by comparing planes with their copy from the last solve, and only the clusters of changed cells (and their neighbours
+ * when a border changed) are built again.
+ * The route in the graph of entrance states only picks a corridor: its clusters and the clusters around them,
+ * and the path is searched again by A* over all cells of the corridor. So the path does not bend through entrances
+ * and is the shortest one inside the corridor; it is longer than the shortest one only when every shortest path
+ * leaves the corridor. Entrances model only straight steps over borders, so when the abstract search finds no route
+ * (a border can be crossed by a diagonal step or a jump only) the corridor is the whole board, and there is no route
+ * only when A* would not find one either.
+ * This variant keeps paths close to the shortest ones and has no speed benefit: the path is never refined only
+ * inside the clusters of the route, every query ends with A* over the corridor, and the searches from the start
+ * and the finish inside their clusters and the abstract search come on top of it. A leg takes about 1.2-8 times
+ * longer than with {@link AStar} on 512x512 boards and 15-100 times longer on 9x9 and 64x64 boards.
+ * It is not in {@link SearchAlgorithm#NAMES}, only {@link SolverBenchmark} measures it.
+ */
+class HierarchicalAStar extends SearchAlgorithm {
+    /**
+     * Side of cluster by default
+     */
+    static final int DEFAULT_CLUSTER_SIZE = 32;
+
+    /**
+     * Free segment of border of this length or longer gets two entrances
+     */
+    private static final int LONG_ENTRANCE = 6;
+
+    /**
+     * Planes that define moves, they are copied to find changed cells
+     */
+    private static final int[] WATCHED = {BitBoard.PASSABLE_ALIVE, BitBoard.PASSABLE_DEAD, BitBoard.KILL_ZONE, BitBoard.TORTUGA};
+
+    /**
+     * Part of cells that can change before the abstraction is built again (1 / REBUILD_RATIO)
+     */
+    private static final int REBUILD_RATIO = 8;
+
+    /**
+     * Side of cluster
+     */
+    private final int clusterSize;
+
+    /**
+     * Search for moves without straight steps, where entrances can not be used
+     */
+    private final AStar fallback;
+
+    /**
+     * Clusters by rows of clusters, null if the abstraction is not built
+     */
+    private Cluster[] clusters;
+
+    /**
+     * Amount of clusters along x and y
+     */
+    private int clusterRows, clusterColumns;
+
+    /**
+     * Width of planes and moves the abstraction is built for
+     */
+    private int abstractStride = -1;
+    private int[] abstractOffsets, abstractCosts;
+
+    /**
+     * Shifts of moves along x and y, so searches find coordinates of the next cell without division
+     */
+    private int[] moveX, moveY;
+
+    /**
+     * Every move has the opposite move of the same cost
+     */
+    private boolean symmetric;
+
+    /**
+     * Copy of watched planes from the last solve
+     */
+    private long[][] watched;
+
+    /**
+     * Entrances on the border of every cluster with the cluster below it and on the right of it:
+     * pairs of cells, the first one in the cluster
+     */
+    private int[][] southPairs, eastPairs;
+
+    /**
+     * Open list and g of searches inside a cluster, by local id slot * area + row * height + column
+     */
+    private OpenList local;
+    private int[] localG;
+
+    /**
+     * Open list, g and previous state of the search in the graph of entrance states and then of the search
+     * in the corridor, by id of state. Values are valid only for states whose mark equals the number of the search
+     */
+    private OpenList open;
+    private int[] abstractG, abstractParent, marks;
+    private int searchNumber;
+
+    /**
+     * Clusters of the corridor of the last route
+     */
+    private boolean[] corridor;
+
+    /**
+     * Id of the virtual goal in the graph of entrance states (SLOTS * cells), the states of finish cell are joined with it
+     */
+    private int goal;
+
+    /**
+     * Amount of clusters whose distances were dropped before the last solve (-1 if the abstraction was built from scratch)
+     */
+    private int changedClusters;
+
+    /**
+     * Constructor for HPA* with clusters of default size
+     *
+     * @param scenario number of scenario
+     */
+    HierarchicalAStar(int scenario) {
+        this(scenario, DEFAULT_CLUSTER_SIZE);
+    }
+
+    /**
+     * Constructor for HPA*.
+     *
+     * @param scenario    number of scenario
+     * @param clusterSize side of square cluster, at least 4
+     */
+    HierarchicalAStar(int scenario, int clusterSize) {
+        if (clusterSize < 4) {
+            throw new IllegalArgumentException("Side of cluster must be at least 4");
+        }
+        this.scenario = scenario;
+        this.clusterSize = clusterSize;
+        fallback = new AStar(scenario);
+        int states = PackedState.SLOTS * clusterSize * clusterSize;
+        local = new BucketQueue(states);
+        localG = new int[states];
+    }
+
+    @Override
+    SearchAlgorithm newInstance() {
+        return new HierarchicalAStar(scenario, clusterSize);
+    }
+
+    /**
+     * Caller for function that solves the problem when Jack starts from (from_x, from_y) to (finish_x, finish_y).
+     *
+     * @param from_x   coordinate
+     * @param from_y   coordinate
+     * @param finish_x coordinate
+     * @param finish_y coordinate
+     * @param shifts   array of shift for Jack movement with respect to (x, y)
+     * @param planes   of board for which we solve the problem
+     * @return instance of Result class
+     */
+    public Result solve(int from_x, int from_y, int finish_x, int finish_y, ArrayList<Tuple<Integer>> shifts, BitBoard planes) {
+        SolveEvent event = new SolveEvent();
+        event.begin();
+        long startTime = System.nanoTime();
+        prepare(from_x, from_y, finish_x, finish_y, shifts, planes);
+        if (!hasStraightSteps()) {
+            Result result = fallback.solve(from_x, from_y, finish_x, finish_y, shifts, planes);
+            pathLength = fallback.pathLength;
+            path = fallback.path;
+            stats.copyFrom(fallback.stats);
+            amountTimeForExecution = fallback.amountTimeForExecution;
+            return result;
+        }
+        if ((long) PackedState.SLOTS * planes.cells >= Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Board is too big for HPA*");
+        }
+        stats.expanded = 0;
+        if (clusters == null || abstractStride != planes.stride || clusterRows != ceilDiv(planes.rows)
+                || clusterColumns != ceilDiv(planes.columns) || !Arrays.equals(moves.offsets, abstractOffsets)
+                || !Arrays.equals(moves.costs, abstractCosts) || !update()) {
+            build();
+        }
+        stats.setupNanos = System.nanoTime() - startTime;
+
+        int start = planes.index(from_x, from_y);
+        int target = planes.index(finish_x, finish_y);
+        int found = -1;
+        if (start == target) {
+            pathLength = 0;
+            path = new Path(new int[]{planes.number(start)}, planes.columns);
+            return finish(event, startTime);
+        }
+        if (planes.test(BitBoard.PASSABLE_ALIVE, target) || planes.test(BitBoard.PASSABLE_DEAD, target)) {
+            if (searchAbstract(start, target) != Constants.INF) {
+                markCorridor();
+                found = searchCorridor(start, target);
+            }
+            if (found < 0) {
+                // entrances model only straight steps over borders, a diagonal step or a jump can be the only way
+                Arrays.fill(corridor, true);
+                found = searchCorridor(start, target);
+            }
+        }
+        pathLength = found < 0 ? Constants.INF : abstractG[found];
+        path = found < 0 ? null : getPath(abstractParent, found);
+        return finish(event, startTime);
+    }
+
+    /**
+     * Checks that Jack can make straight steps of cost one, they are used to cross borders of clusters.
+     *
+     * @return true if entrances can be used
+     */
+    private boolean hasStraightSteps() {
+        int found = 0;
+        int[] steps = {planes.stride, -planes.stride, 1, -1};
+        for (int k = 0; k < moves.offsets.length; k++) {
+            for (int i = 0; i < steps.length; i++) {
+                if (moves.offsets[k] == steps[i] && moves.costs[k] == 1) {
+                    found |= 1 << i;
+                }
+            }
+        }
+        return found == 0b1111;
+    }
+
+    /**
+     * Amount of clusters along a side of board.
+     *
+     * @param cells amount of cells along the side
+     * @return amount of clusters
+     */
+    private int ceilDiv(int cells) {
+        return (cells + clusterSize - 1) / clusterSize;
+    }
+
+    /**
+     * Builds clusters and entrances of the whole board, distances of clusters are computed later.
+     */
+    private void build() {
+        abstractStride = planes.stride;
+        abstractOffsets = moves.offsets.clone();
+        abstractCosts = moves.costs.clone();
+        moveX = new int[moves.offsets.length];
+        moveY = new int[moves.offsets.length];
+        for (int k = 0; k < moves.offsets.length; k++) {
+            // a move shifts y by two cells at most, and stride is wider than four
+            moveX[k] = floorDiv(moves.offsets[k] + 2, planes.stride);
+            moveY[k] = moves.offsets[k] - moveX[k] * planes.stride;
+        }
+        symmetric = true;
+        for (int k = 0; k < moves.offsets.length; k++) {
+            boolean found = false;
+            for (int l = 0; l < moves.offsets.length; l++) {
+                found |= moves.offsets[l] == -moves.offsets[k] && moves.costs[l] == moves.costs[k];
+            }
+            symmetric &= found;
+        }
+        clusterRows = ceilDiv(planes.rows);
+        clusterColumns = ceilDiv(planes.columns);
+        clusters = new Cluster[clusterRows * clusterColumns];
+        corridor = new boolean[clusters.length];
+        for (int i = 0; i < clusterRows; i++) {
+            for (int j = 0; j < clusterColumns; j++) {
+                clusters[i * clusterColumns + j] = new Cluster(i * clusterSize, j * clusterSize,
+                        min(planes.rows, (i + 1) * clusterSize), min(planes.columns, (j + 1) * clusterSize));
+            }
+        }
+        southPairs = new int[clusters.length][];
+        eastPairs = new int[clusters.length][];
+        for (int c = 0; c < clusters.length; c++) {
+            southPairs[c] = borderPairs(c, true);
+            eastPairs[c] = borderPairs(c, false);
+        }
+        for (int c = 0; c < clusters.length; c++) {
+            clusters[c].entrances = entrances(c);
+        }
+        goal = PackedState.SLOTS * planes.cells;
+        if (abstractG == null || abstractG.length != goal + 1) {
+            open = new BucketQueue(goal + 1);
+            abstractG = new int[goal + 1];
+            abstractParent = new int[goal + 1];
+            marks = new int[goal + 1];
+            searchNumber = 0;
+        }
+        watched = planes.copyPlanes(WATCHED, watched);
+        changedClusters = -1;
+    }
+
+    /**
+     * Builds again the clusters around cells that changed since the last solve.
+     *
+     * @return false if too many cells changed and the abstraction should be built from scratch
+     */
+    private boolean update() {
+        int[] changed = planes.changedCells(WATCHED, watched, planes.cells / REBUILD_RATIO);
+        if (changed == null) {
+            return false;
+        }
+        changedClusters = 0;
+        if (changed.length == 0) {
+            return true;
+        }
+        watched = planes.copyPlanes(WATCHED, watched);
+        // clusters of changed cells and of their neighbours across a border
+        boolean[] dirty = new boolean[clusters.length];
+        int[] dx = {0, 1, -1, 0, 0}, dy = {0, 0, 0, 1, -1};
+        for (int cell : changed) {
+            for (int d = 0; d < dx.length; d++) {
+                int x = planes.x(cell) + dx[d], y = planes.y(cell) + dy[d];
+                if (x >= 0 && x < planes.rows && y >= 0 && y < planes.columns) {
+                    dirty[clusterIndex(x, y)] = true;
+                }
+            }
+        }
+        for (int c = 0; c < clusters.length; c++) {
+            if (!dirty[c]) {
+                continue;
+            }
+            clusters[c].table = null;
+            changedClusters++;
+            southPairs[c] = borderPairs(c, true);
+            eastPairs[c] = borderPairs(c, false);
+            if (c >= clusterColumns) {
+                southPairs[c - clusterColumns] = borderPairs(c - clusterColumns, true);
+            }
+            if (c % clusterColumns > 0) {
+                eastPairs[c - 1] = borderPairs(c - 1, false);
+            }
+        }
+        // entrances of neighbours change only if a border changed, then their distances are dropped too
+        for (int c = 0; c < clusters.length; c++) {
+            if (!dirty[c]) {
+                continue;
+            }
+            int[] neighbours = {c, c - clusterColumns, c + clusterColumns, c % clusterColumns > 0 ? c - 1 : -1,
+                    c % clusterColumns < clusterColumns - 1 ? c + 1 : -1};
+            for (int n : neighbours) {
+                if (n < 0 || n >= clusters.length) {
+                    continue;
+                }
+                int[] entrances = entrances(n);
+                if (!Arrays.equals(entrances, clusters[n].entrances)) {
+                    clusters[n].entrances = entrances;
+                    if (clusters[n].table != null) {
+                        clusters[n].table = null;
+                        changedClusters++;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds entrances on the border of cluster with the cluster below it or on the right of it.
+     *
+     * @param c     index of cluster
+     * @param south true for the border with the cluster below, false for the one on the right
+     * @return pairs of cells, the first one in cluster c
+     */
+    private int[] borderPairs(int c, boolean south) {
+        Cluster cluster = clusters[c];
+        if (south ? cluster.x1 >= planes.rows : cluster.y1 >= planes.columns) {
+            return new int[0];
+        }
+        int length = south ? cluster.y1 - cluster.y0 : cluster.x1 - cluster.x0;
+        int[] pairs = new int[8];
+        int count = 0;
+        int begin = -1;
+        for (int i = 0; i <= length; i++) {
+            boolean free = i < length && planes.test(BitBoard.PASSABLE_DEAD, borderCell(cluster, south, i, false))
+                    && planes.test(BitBoard.PASSABLE_DEAD, borderCell(cluster, south, i, true));
+            if (free && begin < 0) {
+                begin = i;
+            }
+            if (!free && begin >= 0) {
+                int end = i - 1;
+                int[] chosen = end - begin + 1 < LONG_ENTRANCE ? new int[]{(begin + end) / 2} : new int[]{begin, end};
+                for (int position : chosen) {
+                    if (count + 2 > pairs.length) {
+                        pairs = Arrays.copyOf(pairs, pairs.length * 2);
+                    }
+                    pairs[count++] = borderCell(cluster, south, position, false);
+                    pairs[count++] = borderCell(cluster, south, position, true);
+                }
+                begin = -1;
+            }
+        }
+        return Arrays.copyOf(pairs, count);
+    }
+
+    /**
+     * Cell on one side of the border of cluster.
+     *
+     * @param cluster  cluster
+     * @param south    true for the border with the cluster below, false for the one on the right
+     * @param position along the border
+     * @param outside  true for the cell of the neighbouring cluster
+     * @return index of cell
+     */
+    private int borderCell(Cluster cluster, boolean south, int position, boolean outside) {
+        int shift = outside ? 0 : 1;
+        return south ? planes.index(cluster.x1 - shift, cluster.y0 + position) : planes.index(cluster.x0 + position, cluster.y1 - shift);
+    }
+
+    /**
+     * Collects entrance cells of cluster from the borders with its four neighbours.
+     *
+     * @param c index of cluster
+     * @return sorted cells without repeats
+     */
+    private int[] entrances(int c) {
+        int[] all = new int[0];
+        all = appendSide(all, southPairs[c], 0);
+        all = appendSide(all, eastPairs[c], 0);
+        if (c >= clusterColumns) {
+            all = appendSide(all, southPairs[c - clusterColumns], 1);
+        }
+        if (c % clusterColumns > 0) {
+            all = appendSide(all, eastPairs[c - 1], 1);
+        }
+        return Arrays.stream(all).sorted().distinct().toArray();
+    }
+
+    /**
+     * Appends one side of pairs to the array.
+     *
+     * @param all   array of cells
+     * @param pairs pairs of cells
+     * @param side  0 for the first cells of pairs, 1 for the second ones
+     * @return longer array
+     */
+    private static int[] appendSide(int[] all, int[] pairs, int side) {
+        int[] result = Arrays.copyOf(all, all.length + pairs.length / 2);
+        for (int i = 0; i < pairs.length / 2; i++) {
+            result[all.length + i] = pairs[2 * i + side];
+        }
+        return result;
+    }
+
+    /**
+     * Index of cluster with the cell.
+     *
+     * @param x coordinate
+     * @param y coordinate
+     * @return index of cluster
+     */
+    private int clusterIndex(int x, int y) {
+        return x / clusterSize * clusterColumns + y / clusterSize;
+    }
+
+    /**
+     * Computes distances between entrance states of cluster if they are not known. States of entrance cell
+     * are numbered entrance * SLOTS + slot. When there are no Tortuga and no cells near Kraken in the cluster,
+     * Jack can not change the layer inside it and all layers are the same, so distances are searched once and copied.
+     *
+     * @param cluster cluster
+     */
+    private void computeTable(Cluster cluster) {
+        if (cluster.table != null) {
+            return;
+        }
+        int[] entrances = cluster.entrances;
+        int n = PackedState.SLOTS * entrances.length;
+        int[] table = new int[n * n];
+        Arrays.fill(table, Constants.INF);
+        boolean plain = true;
+        for (int x = cluster.x0; x < cluster.x1 && plain; x++) {
+            for (int y = cluster.y0; y < cluster.y1 && plain; y++) {
+                int cell = planes.index(x, y);
+                plain = !planes.test(BitBoard.TORTUGA, cell) && !planes.test(BitBoard.KILL_ZONE, cell)
+                        && planes.test(BitBoard.PASSABLE_ALIVE, cell) == planes.test(BitBoard.PASSABLE_DEAD, cell);
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            int entrance = entrances[i / PackedState.SLOTS];
+            int slot = i % PackedState.SLOTS;
+            if (plain && slot > 0) {
+                for (int j = 0; j < n; j += PackedState.SLOTS) {
+                    table[i * n + j + slot] = table[(i - slot) * n + j];
+                }
+                continue;
+            }
+            if (!planes.test(BitBoard.passablePlane(PackedState.layerOfSlot(slot)), entrance)) {
+                continue;
+            }
+            searchCluster(cluster, slot * planes.cells + entrance, -1, -1);
+            for (int j = 0; j < n; j++) {
+                table[i * n + j] = localG[localId(cluster, j % PackedState.SLOTS * planes.cells + entrances[j / PackedState.SLOTS])];
+            }
+        }
+        cluster.plain = plain;
+        cluster.table = table;
+    }
+
+    /**
+     * Local id of state in a search inside cluster.
+     *
+     * @param cluster cluster with the cell of state
+     * @param id      of state
+     * @return local id
+     */
+    private int localId(Cluster cluster, int id) {
+        int slot = id / planes.cells;
+        int cell = id - slot * planes.cells;
+        int height = cluster.y1 - cluster.y0;
+        return slot * (cluster.x1 - cluster.x0) * height + (planes.x(cell) - cluster.x0) * height + planes.y(cell) - cluster.y0;
+    }
+
+    /**
+     * Search that does not leave the cluster: A* when it stops at a cell or state and Dijkstra when it searches the whole cluster.
+     * Distances are left in localG.
+     *
+     * @param cluster   where the search stays
+     * @param source    id of the first state
+     * @param stopCell  search stops when a state of this cell is taken, -1 to search the whole cluster
+     * @param stopState search stops when this state is taken, -1 to search the whole cluster
+     * @return local id of the state where the search stopped, or -1
+     */
+    private int searchCluster(Cluster cluster, int source, int stopCell, int stopState) {
+        int cells = planes.cells;
+        int[] offsets = moves.offsets, middles = moves.middles, costs = moves.costs;
+        int height = cluster.y1 - cluster.y0;
+        int area = (cluster.x1 - cluster.x0) * height;
+        Arrays.fill(localG, 0, PackedState.SLOTS * area, Constants.INF);
+        local.clear();
+        int first = localId(cluster, source);
+        localG[first] = 0;
+        local.push(first, 0);
+        int stop = stopState < 0 ? -1 : localId(cluster, stopState);
+        int aim = stopCell >= 0 ? stopCell : stopState >= 0 ? stopState % cells : -1;
+        int aimX = aim < 0 ? 0 : planes.x(aim), aimY = aim < 0 ? 0 : planes.y(aim);
+        while (!local.isEmpty()) {
+            int id = local.poll();
+            int slot = id / area;
+            int rest = id - slot * area;
+            int x = cluster.x0 + rest / height, y = cluster.y0 + rest % height;
+            int cell = planes.index(x, y);
+            if (id == stop || cell == stopCell) {
+                return id;
+            }
+
+            // Jack takes a cask in Tortuga and kills Kraken near his "heart" before the next move
+            int layer = planes.layerAfter(PackedState.layerOfSlot(slot), cell);
+            int base = PackedState.slot(layer) * area;
+            int passable = BitBoard.passablePlane(layer);
+            int currentG = localG[id];
+            for (int k = 0; k < offsets.length; k++) {
+                int next = cell + offsets[k];
+                int nextX = x + moveX[k], nextY = y + moveY[k];
+                if (nextX < cluster.x0 || nextX >= cluster.x1 || nextY < cluster.y0 || nextY >= cluster.y1
+                        || !planes.test(passable, next) || !planes.test(passable, cell + middles[k])) {
+                    continue;
+                }
+                int nextId = base + (nextX - cluster.x0) * height + nextY - cluster.y0;
+                int nextG = currentG + costs[k];
+                if (localG[nextId] > nextG) {
+                    localG[nextId] = nextG;
+                    local.push(nextId, aim < 0 ? nextG : nextG + h(nextX, nextY, aimX, aimY));
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * A* in the graph of entrance states from the start to the virtual goal.
+     *
+     * @param start  index of start cell
+     * @param target index of finish cell
+     * @return length of route or INF if there is no route
+     */
+    private int searchAbstract(int start, int target) {
+        int cells = planes.cells;
+        Cluster startCluster = clusters[clusterIndex(planes.x(start), planes.y(start))];
+        Cluster targetCluster = clusters[clusterIndex(planes.x(target), planes.y(target))];
+
+        // edges from the start: distances to entrance states of its cluster and to the finish if it is there
+        searchCluster(startCluster, start, -1, -1);
+        int[] startEntrances = startCluster.entrances;
+        int[] startRow = new int[PackedState.SLOTS * startEntrances.length];
+        for (int j = 0; j < startRow.length; j++) {
+            startRow[j] = localG[localId(startCluster, j % PackedState.SLOTS * cells + startEntrances[j / PackedState.SLOTS])];
+        }
+        int startToGoal = Constants.INF;
+        if (startCluster == targetCluster) {
+            for (int slot = 0; slot < PackedState.SLOTS; slot++) {
+                startToGoal = min(startToGoal, localG[localId(startCluster, slot * cells + target)]);
+            }
+        }
+        // edges to the goal from entrance states of the finish cluster are searched when they are needed
+        int[] toGoal = new int[PackedState.SLOTS * targetCluster.entrances.length];
+        Arrays.fill(toGoal, -1);
+        computeTable(targetCluster);
+        if (symmetric && targetCluster.plain) {
+            // moves can be reversed and the layer stays the same, so one search from the finish gives all of them
+            searchCluster(targetCluster, target, -1, -1);
+            for (int j = 0; j < toGoal.length; j++) {
+                toGoal[j] = localG[localId(targetCluster, targetCluster.entrances[j / PackedState.SLOTS])];
+            }
+        }
+
+        if (++searchNumber == 0) {
+            Arrays.fill(marks, 0);
+            searchNumber = 1;
+        }
+        open.clear();
+        marks[start] = searchNumber;
+        abstractG[start] = 0;
+        abstractParent[start] = -1;
+        open.push(start, h(from_x, from_y, finish_x, finish_y));
+        while (!open.isEmpty()) {
+            int node = open.poll();
+            if (node == goal) {
+                return abstractG[goal];
+            }
+            stats.expanded++;
+            int cell = node % cells;
+            int currentG = abstractG[node];
+            int c = clusterIndex(planes.x(cell), planes.y(cell));
+            Cluster cluster = clusters[c];
+
+            // inside the cluster
+            if (node == start) {
+                for (int j = 0; j < startRow.length; j++) {
+                    relax(node, j % PackedState.SLOTS * cells + startEntrances[j / PackedState.SLOTS], currentG + startRow[j]);
+                }
+                relax(node, goal, currentG + startToGoal);
+            } else {
+                computeTable(cluster);
+                int n = PackedState.SLOTS * cluster.entrances.length;
+                int i = Arrays.binarySearch(cluster.entrances, cell) * PackedState.SLOTS + node / cells;
+                for (int j = 0; j < n; j++) {
+                    relax(node, j % PackedState.SLOTS * cells + cluster.entrances[j / PackedState.SLOTS], currentG + cluster.table[i * n + j]);
+                }
+                if (cluster == targetCluster) {
+                    if (toGoal[i] < 0) {
+                        int stopped = searchCluster(cluster, node, target, -1);
+                        toGoal[i] = stopped < 0 ? Constants.INF : localG[stopped];
+                    }
+                    relax(node, goal, currentG + toGoal[i]);
+                }
+            }
+
+            // over borders: Jack makes a straight step after the layer of this cell is applied
+            int layer = planes.layerAfter(PackedState.layerOfSlot(node / cells), cell);
+            int base = PackedState.slot(layer) * cells;
+            int passable = BitBoard.passablePlane(layer);
+            int[][] borders = {southPairs[c], eastPairs[c], c >= clusterColumns ? southPairs[c - clusterColumns] : null,
+                    c % clusterColumns > 0 ? eastPairs[c - 1] : null};
+            for (int b = 0; b < borders.length; b++) {
+                int[] pairs = borders[b];
+                if (pairs == null) {
+                    continue;
+                }
+                int side = b < 2 ? 0 : 1;
+                for (int p = 0; p < pairs.length; p += 2) {
+                    int other = pairs[p + 1 - side];
+                    if (pairs[p + side] == cell && planes.test(passable, other)) {
+                        relax(node, base + other, currentG + 1);
+                    }
+                }
+            }
+        }
+        return Constants.INF;
+    }
+
+    /**
+     * Puts state of graph to the open list if the path through node is shorter.
+     *
+     * @param node  expanded state
+     * @param next  reached state or the goal
+     * @param nextG length of path to next through node
+     */
+    private void relax(int node, int next, int nextG) {
+        if (nextG >= Constants.INF || marks[next] == searchNumber && abstractG[next] <= nextG) {
+            return;
+        }
+        marks[next] = searchNumber;
+        abstractG[next] = nextG;
+        abstractParent[next] = node;
+        int cell = next % planes.cells;
+        open.push(next, next == goal ? nextG : nextG + h(planes.x(cell), planes.y(cell), finish_x, finish_y));
+    }
+
+    /**
+     * Marks the corridor of the route in the graph of entrance states: clusters the route goes through
+     * and the clusters around them.
+     */
+    private void markCorridor() {
+        Arrays.fill(corridor, false);
+        for (int node = abstractParent[goal]; node != -1; node = abstractParent[node]) {
+            int cell = node % planes.cells;
+            int row = planes.x(cell) / clusterSize, column = planes.y(cell) / clusterSize;
+            for (int i = max(0, row - 1); i <= min(clusterRows - 1, row + 1); i++) {
+                for (int j = max(0, column - 1); j <= min(clusterColumns - 1, column + 1); j++) {
+                    corridor[i * clusterColumns + j] = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * A* from the start to the finish over all cells of the corridor. The route in the graph of entrance states
+     * lies in the corridor, so the path is not longer than that route.
+     *
+     * @param start  index of start cell
+     * @param target index of finish cell
+     * @return id of the state in finish cell, or -1 if the finish can not be reached inside the corridor
+     */
+    private int searchCorridor(int start, int target) {
+        int cells = planes.cells;
+        int[] offsets = moves.offsets, middles = moves.middles, costs = moves.costs;
+        if (++searchNumber == 0) {
+            Arrays.fill(marks, 0);
+            searchNumber = 1;
+        }
+        open.clear();
+        marks[start] = searchNumber;
+        abstractG[start] = 0;
+        abstractParent[start] = -1;
+        open.push(start, h(from_x, from_y, finish_x, finish_y));
+        while (!open.isEmpty()) {
+            int id = open.poll();
+            int slot = id / cells;
+            int cell = id - slot * cells;
+            if (cell == target) {
+                return id;
+            }
+            stats.expanded++;
+
+            // Jack takes a cask in Tortuga and kills Kraken near his "heart" before the next move
+            int layer = planes.layerAfter(PackedState.layerOfSlot(slot), cell);
+            int base = PackedState.slot(layer) * cells;
+            int passable = BitBoard.passablePlane(layer);
+            int currentG = abstractG[id];
+            int x = planes.x(cell), y = planes.y(cell);
+            for (int k = 0; k < offsets.length; k++) {
+                int next = cell + offsets[k];
+                if (!planes.test(passable, next) || !planes.test(passable, cell + middles[k])) {
+                    continue;
+                }
+                int nextX = x + moveX[k], nextY = y + moveY[k];
+                int nextId = base + next;
+                int nextG = currentG + costs[k];
+                if (!corridor[clusterIndex(nextX, nextY)] || marks[nextId] == searchNumber && abstractG[nextId] <= nextG) {
+                    continue;
+                }
+                marks[nextId] = searchNumber;
+                abstractG[nextId] = nextG;
+                abstractParent[nextId] = id;
+                open.push(nextId, nextG + h(nextX, nextY, finish_x, finish_y));
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Getter for amount of rebuilt clusters.
+     *
+     * @return amount of clusters whose distances were dropped before the last solve, or -1 if everything was built again
+     */
+    int getChangedClusters() {
+        return changedClusters;
+    }
+
+    /**
+     * Square part of board with its entrances and distances between them.
+     */
+    private static final class Cluster {
+        /**
+         * Cells of cluster: x0 <= x < x1, y0 <= y < y1
+         */
+        final int x0, y0, x1, y1;
+
+        /**
+         * Sorted entrance cells
+         */
+        int[] entrances;
+
+        /**
+         * Distances between entrance states (table[i * n + j] from state i to state j, n = SLOTS * entrances),
+         * null until they are needed
+         */
+        int[] table;
+
+        /**
+         * Jack can not change the layer inside cluster and all layers are the same there (known with the table)
+         */
+        boolean plain;
+
+        /**
+         * Constructor of cluster.
+         *
+         * @param x0 first row
+         * @param y0 first column
+         * @param x1 row after the last one
+         * @param y1 column after the last one
+         */
+        Cluster(int x0, int y0, int x1, int y1) {
+            this.x0 = x0;
+            this.y0 = y0;
+            this.x1 = x1;
+            this.y1 = y1;
+        }
+    }
+}
+
+/**
+ * Open list for A*: set of node ids (numbers from 0 to capacity - 1) with integer priorities.
+ * Pushing an id that is already in the list changes its priority, so the list never holds stale duplicates.
+ */
+interface OpenList {
+    /**
+     * Removes all ids from the list.
+     */
+    void clear();
+
+    /**
+     * Checks for emptiness.
+     *
+     * @return true if there are no ids in the list
+     */
+    boolean isEmpty();
+
+    /**
+     * Amount of ids in the list.
+     *
+     * @return size of list
+     */
+    int size();
+
+    /**
+     * Checks if id is in the list.
+     *
+     * @param id of node
+     * @return true if id is in the list
+     */
+    boolean contains(int id);
+
+    /**
+     * Inserts id with priority, or changes priority of id if it is already in the list.
+     *
+     * @param id       of node
+     * @param priority of node, smaller is better
+     */
+    void push(int id, int priority);
+
+    /**
+     * Smallest priority in the list, the list must not be empty.
+     *
+     * @return priority of id that will be removed by poll
+     */
+    int peekPriority();
+
+    /**
+     * Removes id with the smallest priority.
+     *
+     * @return removed id
+     */
+    int poll();
+}
+
+/**
+ * Two-level bucket queue. There is one bucket (intrusive doubly linked list of ids) for every priority
+ * in window [base, base + 4096), the buckets are grouped by 64 and for every group and for the whole window
+ * there is a bit mask of non-empty buckets, so the smallest priority is found with two numberOfTrailingZeros.
+ * A* costs are small integers, so with consistent heuristic all priorities in the list differ by a few units,
+ * and push, decrease and poll are O(1).
+ */
+class BucketQueue implements OpenList {
+    /**
+     * Amount of buckets in window, 64 groups by 64 buckets
+     */
+    private static final int SPAN = 4096;
+
+    /**
+     * Mask for taking number of bucket from priority
+     */
+    private static final int MASK = SPAN - 1;
+
+    /**
+     * Mark of id that is not in the list
+     */
+    private static final int ABSENT = -1;
+
+    /**
+     * Previous and next id in bucket (ABSENT at the ends of bucket)
+     */
+    private final int[] prev, next;
+
+    /**
+     * Priority of id, or nothing if id is not in the list
+     */
+    private final int[] priority;
+
+    /**
+     * Is id in the list
+     */
+    private final boolean[] present;
+
+    /**
+     * First id of every bucket
+     */
+    private final int[] head = new int[SPAN];
+
+    /**
+     * Bit masks of non-empty buckets for every group of 64 buckets
+     */
+    private final long[] groups = new long[SPAN / 64];
+
+    /**
+     * Bit mask of non-empty groups
+     */
+    private long summary;
+
+    /**
+     * Smallest priority that can be in the list
+     */
+    private int base;
+
+    /**
+     * Biggest priority that has been pushed since the list became empty
+     */
+    private int top;
+
+    /**
+     * Amount of ids in the list
+     */
+    private int size;
+
+    /**
+     * Creates empty queue for ids from 0 to capacity - 1.
+     *
+     * @param capacity amount of ids
+     */
+    BucketQueue(int capacity) {
+        prev = new int[capacity];
+        next = new int[capacity];
+        priority = new int[capacity];
+        present = new boolean[capacity];
+        Arrays.fill(head, ABSENT);
+    }
+
+    @Override
+    public void clear() {
+        while (size != 0) {
+            poll();
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean contains(int id) {
+        return present[id];
+    }
+
+    @Override
+    public void push(int id, int priority) {
+        if (present[id]) {
+            unlink(id);
+        }
+        if (size == 0) {
+            base = priority;
+            top = priority;
+        } else {
+            int newBase = min(base, priority);
+            int newTop = max(top, priority);
+            if (newTop - newBase >= SPAN) {
+                throw new IllegalStateException("Priorities in bucket queue differ more than " + SPAN);
+            }
+            base = newBase;
+            top = newTop;
+        }
+        link(id, priority);
+    }
+
+    @Override
+    public int peekPriority() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        int start = base & MASK;
+        base += (firstBucket() - start) & MASK;
+        return base;
+    }
+
+    @Override
+    public int poll() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        int start = base & MASK;
+        int bucket = firstBucket();
+        base += (bucket - start) & MASK;
+        int id = head[bucket];
+        unlink(id);
+        return id;
+    }
+
+    /**
+     * Finds the first non-empty bucket starting from the window start, the list must not be empty.
+     *
+     * @return number of bucket
+     */
+    private int firstBucket() {
+        int start = base & MASK;
+        int group = start >>> 6;
+        long bits = groups[group] & (-1L << (start & 63));
+        if (bits != 0) {
+            return (group << 6) | Long.numberOfTrailingZeros(bits);
+        }
+        long after = group == 63 ? 0 : summary & (-1L << (group + 1));
+        // buckets after the window start, otherwise wrap around to the beginning of the array
+        int g = Long.numberOfTrailingZeros(after != 0 ? after : summary);
+        return (g << 6) | Long.numberOfTrailingZeros(groups[g]);
+    }
+
+    /**
+     * Puts id in the head of bucket.
+     *
+     * @param id       of node
+     * @param priority of node
+     */
+    private void link(int id, int priority) {
+        int bucket = priority & MASK;
+        int first = head[bucket];
+        prev[id] = ABSENT;
+        next[id] = first;
+        if (first != ABSENT) {
+            prev[first] = id;
+        }
+        head[bucket] = id;
+        groups[bucket >>> 6] |= 1L << bucket;
+        summary |= 1L << (bucket >>> 6);
+        this.priority[id] = priority;
+        present[id] = true;
+        size++;
+    }
+
+    /**
+     * Removes id from its bucket.
+     *
+     * @param id of node
+     */
+    private void unlink(int id) {
+        int bucket = priority[id] & MASK;
+        int p = prev[id], n = next[id];
+        if (p == ABSENT) {
+            head[bucket] = n;
+        } else {
+            next[p] = n;
+        }
+        if (n != ABSENT) {
+            prev[n] = p;
+        }
+        if (head[bucket] == ABSENT) {
+            groups[bucket >>> 6] &= ~(1L << bucket);
+            if (groups[bucket >>> 6] == 0) {
+                summary &= ~(1L << (bucket >>> 6));
+            }
+        }
+        present[id] = false;
+        size--;
+    }
+}
+
+/**
+ * Binary heap of ids with position index, so priority of id in the heap can be decreased in O(log n)
+ * without adding a duplicate. All data is kept in primitive arrays.
+ */
+class IndexedHeap implements OpenList {
+    /**
+     * Heap of ids
+     */
+    private final int[] heap;
+
+    /**
+     * Position of id in heap or -1 if id is not in the heap
+     */
+    private final int[] position;
+
+    /**
+     * Priority of id
+     */
+    private final int[] priority;
+
+    /**
+     * Amount of ids in the heap
+     */
+    private int size;
+
+    /**
+     * Creates empty heap for ids from 0 to capacity - 1.
+     *
+     * @param capacity amount of ids
+     */
+    IndexedHeap(int capacity) {
+        heap = new int[capacity];
+        position = new int[capacity];
+        priority = new int[capacity];
+        Arrays.fill(position, -1);
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            position[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean contains(int id) {
+        return position[id] >= 0;
+    }
+
+    @Override
+    public void push(int id, int priority) {
+        int i = position[id];
+        if (i < 0) {
+            i = size++;
+            heap[i] = id;
+            position[id] = i;
+            this.priority[id] = priority;
+            siftUp(i);
+        } else if (priority < this.priority[id]) {
+            this.priority[id] = priority;
+            siftUp(i);
+        } else {
+            this.priority[id] = priority;
+            siftDown(i);
+        }
+    }
+
+    @Override
+    public int peekPriority() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        return priority[heap[0]];
+    }
+
+    @Override
+    public int poll() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        int id = heap[0];
+        position[id] = -1;
+        size--;
+        if (size > 0) {
+            heap[0] = heap[size];
+            position[heap[0]] = 0;
+            siftDown(0);
+        }
+        return id;
+    }
+
+    /**
+     * Moves element at position i up while it is smaller than its parent.
+     *
+     * @param i position in heap
+     */
+    private void siftUp(int i) {
+        int id = heap[i];
+        int key = priority[id];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            int other = heap[parent];
+            if (priority[other] <= key) {
+                break;
+            }
+            heap[i] = other;
+            position[other] = i;
+            i = parent;
+        }
+        heap[i] = id;
+        position[id] = i;
+    }
+
+    /**
+     * Moves element at position i down while it is bigger than its children.
+     *
+     * @param i position in heap
+     */
+    private void siftDown(int i) {
+        int id = heap[i];
+        int key = priority[id];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && priority[heap[child + 1]] < priority[heap[child]]) {
+                child++;
+            }
+            int other = heap[child];
+            if (priority[other] >= key) {
+                break;
+            }
+            heap[i] = other;
+            position[other] = i;
+            i = child;
+        }
+        heap[i] = id;
+        position[id] = i;
+    }
+}
+
+/**
+ * Implementation of Backtracking algorithm.
+ * Depth-first search with an explicit stack of packed states (see {@link PackedState}), so the depth of search
+ * is not limited by the thread stack. The smallest g is remembered for every state (cell, cask, krakenIsDead),
+ * a state is visited again only when it is reached by a shorter path. The moves that lead closer to the finish
+ * are tried first, and branches that can not be shorter than the best found path (by g + h) are cut.
+ */
+class BackTracking extends SearchAlgorithm {
+    /**
+     * Length of the shortest found path to every state
+     */
+    private int[] best;
+
+    /**
+     * Previous state on the shortest found path to every state (-1 for the start)
+     */
+    private int[] parent;
+
+    /**
+     * Stack of states to visit
+     */
+    private long[] stack = new long[64];
+
+    /**
+     * Constructor for BackTracking* algorithm
+     *
+     * @param scenario number of scenario
+     */
+    BackTracking(int scenario) {
+        this.scenario = scenario;
+    }
+
+    @Override
+    SearchAlgorithm newInstance() {
+        return new BackTracking(scenario);
+    }
+
+    @Override
+    boolean searchesAllLayers() {
+        return true;
+    }
+
+    /**
+     * Caller for function that solves the problem when Jack starts from (from_x, from_y) to (finish_x, finish_y).
+     *
+     * @param from_x   coordinate
+     * @param from_y   coordinate
+     * @param finish_x coordinate
+     * @param finish_y coordinate
+     * @param shifts   array of shift for Jack movement
+     * @param planes   of board for which we solve the problem
+     * @return instance of Result class
+     */
+    public Result solve(int from_x, int from_y, int finish_x, int finish_y, ArrayList<Tuple<Integer>> shifts, BitBoard planes) {
+        SolveEvent event = new SolveEvent();
+        event.begin();
+        long startTime = System.nanoTime();
+        prepare(from_x, from_y, finish_x, finish_y, shifts, planes);
+        long states = (long) PackedState.SLOTS * planes.cells;
+        if (states > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Board is too big for Backtracking");
+        }
+        if (best == null || best.length != states) {
+            best = new int[(int) states];
+            parent = new int[(int) states];
+        }
+        Arrays.fill(best, Constants.INF);
+        stats.setupNanos = System.nanoTime() - startTime;
+
+        int found = backTrackingSearch();
+        pathLength = found < 0 ? Constants.INF : best[found];
+        path = found < 0 ? null : getPath(parent, found);
+        return finish(event, startTime);
+    }
+
+    /**
+     * Private function that solves the problem.
+     * A state is written to best and parent when it is pushed, so the states in stack with bigger g are stale and skipped.
+     *
+     * @return id of the state in finish cell with the shortest path, or -1 if finish can not be reached
+     */
+    private int backTrackingSearch() {
+        int cells = planes.cells;
+        int[] offsets = moves.offsets, middles = moves.middles, costs = moves.costs;
+        int start = planes.index(from_x, from_y);
+        int target = planes.index(finish_x, finish_y);
+        // moves of the current state ordered by h, the farthest first, so the nearest is on the top of stack
+        long[] children = new long[offsets.length];
+
+        long expanded = 0, pushed = 1, stalePops = 0, reopened = 0, krakenKills = 0;
+        int peakOpen = 1;
+        best[start] = 0;
+        parent[start] = -1;
+        int found = -1;
+        int bound = Constants.INF;
+        int size = 0;
+        stack[size++] = PackedState.of(start, 0, 0);
+        if (start == target) {
+            found = start;
+            size = 0;
+        }
+        while (size > 0) {
+            long state = stack[--size];
+            int cell = PackedState.cell(state);
+            int g = PackedState.g(state);
+            int id = PackedState.slot(PackedState.layer(state)) * cells + cell;
+            if (best[id] < g) {
+                stalePops++;
+                continue;
+            }
+            if (g + h(planes.x(cell), planes.y(cell), finish_x, finish_y) >= bound) {
+                continue;
+            }
+            expanded++;
+
+            // Jack takes a cask in Tortuga and kills Kraken near his "heart" before the next move
+            int layer = planes.layerAfter(PackedState.layer(state), cell);
+            if (layer == 3 && PackedState.layer(state) == 1) {
+                krakenKills++;
+            }
+            int base = PackedState.slot(layer) * cells;
+            int passable = BitBoard.passablePlane(layer);
+            int count = 0;
+            for (int k = 0; k < offsets.length; k++) {
+                int next = cell + offsets[k];
+                int nextId = base + next;
+                int nextG = g + costs[k];
+                if (!planes.test(passable, next) || !planes.test(passable, cell + middles[k]) || best[nextId] <= nextG) {
+                    continue;
+                }
+                int f = nextG + h(planes.x(next), planes.y(next), finish_x, finish_y);
+                if (f >= bound) {
+                    continue;
+                }
+                if (best[nextId] != Constants.INF) {
+                    reopened++;
+                }
+                best[nextId] = nextG;
+                parent[nextId] = id;
+                if (next == target) {
+                    bound = nextG;
+                    found = nextId;
+                    continue;
+                }
+                // insertion sort by f: f is packed in place of g, so packed states are compared by f first
+                long child = PackedState.of(next, layer, f);
+                int i = count++;
+                while (i > 0 && children[i - 1] < child) {
+                    children[i] = children[i - 1];
+                    i--;
+                }
+                children[i] = child;
+            }
+            if (size + count > stack.length) {
+                stack = Arrays.copyOf(stack, max(stack.length * 2, size + count));
+            }
+            for (int i = 0; i < count; i++) {
+                int next = PackedState.cell(children[i]);
+                int nextLayer = PackedState.layer(children[i]);
+                stack[size++] = PackedState.of(next, nextLayer, best[PackedState.slot(nextLayer) * cells + next]);
+            }
+            pushed += count;
+            peakOpen = max(peakOpen, size);
+        }
+        stats.expanded = expanded;
+        stats.pushed = pushed;
+        stats.stalePops = stalePops;
+        stats.reopened = reopened;
+        stats.peakOpen = peakOpen;
+        stats.krakenKills = krakenKills;
+        return found;
+    }
+
+    /**
+     * Getter for path length.
+     *
+     * @return path length
+     */
+    @Override
+    public int getPathLength() {
+        return pathLength;
+    }
+}
+
+/**
+ * Parallel implementation of Backtracking algorithm on ForkJoin pool.
+ * Every task makes the same depth-first search as {@link BackTracking} with its own stack, and when other workers
+ * can take work, the bottom half of the stack (the states nearest to the start, with the biggest subtrees)
+ * is given to a new task. The smallest g and the previous state of every state are shared by all tasks in one
+ * atomic array (g in high 32 bits, parent in low 32 bits) and are changed by compare-and-set only to smaller g,
+ * as well as the length of the best found path, so a cut found by one worker is seen by all others.
+ */
+class ParallelBackTracking extends SearchAlgorithm {
+    /**
+     * Smallest size of stack that is split between tasks
+     */
+    private static final int SPLIT = 32;
+
+    /**
+     * Amount of expansions between checks if the stack should be split
+     */
+    private static final int CHECK = 128;
+
+    /**
+     * Pool of workers
+     */
+    private final java.util.concurrent.ForkJoinPool pool;
+
+    /**
+     * Shortest found path to every state and previous state on it, packed as g << 32 | parent
+     */
+    private java.util.concurrent.atomic.AtomicLongArray best;
+
+    /**
+     * Length of the shortest found path to the finish
+     */
+    private final java.util.concurrent.atomic.AtomicInteger bound = new java.util.concurrent.atomic.AtomicInteger();
+
+    /**
+     * Expansions of all tasks
+     */
+    private final java.util.concurrent.atomic.LongAdder expansions = new java.util.concurrent.atomic.LongAdder();
+
+    /**
+     * Index of finish cell
+     */
+    private int target;
+
+    /**
+     * Constructor for parallel Backtracking algorithm on common pool
+     *
+     * @param scenario number of scenario
+     */
+    ParallelBackTracking(int scenario) {
+        this(scenario, java.util.concurrent.ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructor for parallel Backtracking algorithm.
+     *
+     * @param scenario number of scenario
+     * @param pool     pool of workers
+     */
+    ParallelBackTracking(int scenario, java.util.concurrent.ForkJoinPool pool) {
+        this.scenario = scenario;
+        this.pool = pool;
+    }
+
+    @Override
+    SearchAlgorithm newInstance() {
+        return new ParallelBackTracking(scenario, pool);
+    }
+
+    @Override
+    boolean searchesAllLayers() {
+        return true;
+    }
+
+    /**
+     * Caller for function that solves the problem when Jack starts from (from_x, from_y) to (finish_x, finish_y).
+     *
+     * @param from_x   coordinate
+     * @param from_y   coordinate
+     * @param finish_x coordinate
+     * @param finish_y coordinate
+     * @param shifts   array of shift for Jack movement
+     * @param planes   of board for which we solve the problem
+     * @return instance of Result class
+     */
+    public Result solve(int from_x, int from_y, int finish_x, int finish_y, ArrayList<Tuple<Integer>> shifts, BitBoard planes) {
+        SolveEvent event = new SolveEvent();
+        event.begin();
+        long startTime = System.nanoTime();
+        prepare(from_x, from_y, finish_x, finish_y, shifts, planes);
+        long states = (long) PackedState.SLOTS * planes.cells;
+        if (states > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Board is too big for Backtracking");
+        }
+        if (best == null || best.length() != states) {
+            best = new java.util.concurrent.atomic.AtomicLongArray((int) states);
+        }
+        long unknown = pack(Constants.INF, -1);
+        for (int i = 0; i < states; i++) {
+            best.setPlain(i, unknown);
+        }
+        bound.set(Constants.INF);
+        expansions.reset();
+        stats.setupNanos = System.nanoTime() - startTime;
+        int start = planes.index(from_x, from_y);
+        target = planes.index(finish_x, finish_y);
+
+        best.set(start, pack(0, -1));
+        if (start == target) {
+            bound.set(0);
+        } else {
+            pool.invoke(new Task(new long[]{PackedState.of(start, 0, 0)}, 1));
+        }
+        int found = -1;
+        for (int slot = 0; slot < PackedState.SLOTS && bound.get() != Constants.INF; slot++) {
+            int id = slot * planes.cells + target;
+            if (g(best.get(id)) == bound.get()) {
+                found = id;
+            }
+        }
+        stats.expanded = expansions.sum();
+        pathLength = found < 0 ? Constants.INF : bound.get();
+        path = found < 0 ? null : getPath(i -> (int) best.get(i), found);
+        return finish(event, startTime);
+    }
+
+    /**
+     * Packs path length and previous state.
+     *
+     * @param g      path length
+     * @param parent previous state
+     * @return packed value
+     */
+    private static long pack(int g, int parent) {
+        return (long) g << 32 | (parent & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Path length of packed value.
+     *
+     * @param packed g and parent
+     * @return path length
+     */
+    private static int g(long packed) {
+        return (int) (packed >>> 32);
+    }
+
+    /**
+     * Writes shorter path to state, if it is still shorter than the path written by other workers.
+     *
+     * @param id     of state
+     * @param g      path length
+     * @param parent previous state
+     * @return true if the path was written
+     */
+    private boolean improve(int id, int g, int parent) {
+        long packed = pack(g, parent);
+        long current = best.get(id);
+        while (g(current) > g) {
+            if (best.compareAndSet(id, current, packed)) {
+                return true;
+            }
+            current = best.get(id);
+        }
+        return false;
+    }
+
+    /**
+     * Depth-first search of a part of states, see {@link BackTracking}.
+     */
+    @SuppressWarnings("serial")
+    private final class Task extends java.util.concurrent.RecursiveAction {
+        /**
+         * Stack of states to visit
+         */
+        private long[] stack;
+
+        /**
+         * Amount of states in stack
+         */
+        private int size;
+
+        /**
+         * Creates task for states.
+         *
+         * @param stack states to visit
+         * @param size  amount of states
+         */
+        Task(long[] stack, int size) {
+            this.stack = stack;
+            this.size = size;
+        }
+
+        @Override
+        protected void compute() {
+            int cells = planes.cells;
+            int[] offsets = moves.offsets, middles = moves.middles, costs = moves.costs;
+            long[] children = new long[offsets.length];
+            ArrayList<Task> forked = new ArrayList<>();
+            long expanded = 0;
+            while (size > 0) {
+                long state = stack[--size];
+                int cell = PackedState.cell(state);
+                int g = PackedState.g(state);
+                int id = PackedState.slot(PackedState.layer(state)) * cells + cell;
+                if (g(best.get(id)) < g || g + h(planes.x(cell), planes.y(cell), finish_x, finish_y) >= bound.get()) {
+                    continue;
+                }
+                expanded++;
+
+                // Jack takes a cask in Tortuga and kills Kraken near his "heart" before the next move
+                int layer = planes.layerAfter(PackedState.layer(state), cell);
+                int base = PackedState.slot(layer) * cells;
+                int passable = BitBoard.passablePlane(layer);
+                int count = 0;
+                for (int k = 0; k < offsets.length; k++) {
+                    int next = cell + offsets[k];
+                    int nextG = g + costs[k];
+                    if (!planes.test(passable, next) || !planes.test(passable, cell + middles[k])) {
+                        continue;
+                    }
+                    int f = nextG + h(planes.x(next), planes.y(next), finish_x, finish_y);
+                    if (f >= bound.get() || !improve(base + next, nextG, id)) {
+                        continue;
+                    }
+                    if (next == target) {
+                        bound.accumulateAndGet(nextG, Math::min);
+                        continue;
+                    }
+                    // insertion sort by f, the farthest first, so the nearest is on the top of stack
+                    long child = PackedState.of(next, layer, f);
+                    int i = count++;
+                    while (i > 0 && children[i - 1] < child) {
+                        children[i] = children[i - 1];
+                        i--;
+                    }
+                    children[i] = child;
+                }
+                if (size + count > stack.length) {
+                    stack = Arrays.copyOf(stack, max(stack.length * 2, size + count));
+                }
+                for (int i = 0; i < count; i++) {
+                    int f = PackedState.g(children[i]);
+                    int next = PackedState.cell(children[i]);
+                    stack[size++] = PackedState.of(next, layer, f - h(planes.x(next), planes.y(next), finish_x, finish_y));
+                }
+
+                if (expanded % CHECK == 0 && size >= SPLIT && getSurplusQueuedTaskCount() <= 0) {
+                    int half = size / 2;
+                    Task task = new Task(Arrays.copyOf(stack, max(half, SPLIT)), half);
+                    System.arraycopy(stack, half, stack, 0, size - half);
+                    size -= half;
+                    task.fork();
+                    forked.add(task);
+                }
+            }
+            expansions.add(expanded);
+            for (Task task : forked) {
+                task.join();
+            }
+        }
+    }
+}
+
+/**
+ * Options of command line modes: arguments of form key=value after the mode name. Every mode parses them here,
+ * so malformed arguments and unknown keys are rejected in the same way everywhere.
+ */
+final class Options {
+    /**
+     * Values by key in order of arguments
+     */
+    private final Map<String, String> values;
+
+    /**
+     * Constructor of options.
+     *
+     * @param values values by key
+     */
+    private Options(Map<String, String> values) {
+        this.values = values;
+    }
+
+    /**
+     * Parses arguments of mode.
+     *
+     * @param args arguments from command line, first one is the mode name and skipped
+     * @param mode name of mode for messages
+     * @param keys keys known to the mode
+     * @return options
+     * @throws IllegalArgumentException if an argument is not key=value or its key is unknown
+     */
+    static Options parse(String[] args, String mode, String... keys) {
+        Set<String> known = Set.of(keys);
+        Map<String, String> values = new LinkedHashMap<>();
+        for (int i = 1; i < args.length; i++) {
+            int eq = args[i].indexOf('=');
+            if (eq < 0) {
+                throw new IllegalArgumentException("Expected key=value, got " + args[i]);
+            }
+            String key = args[i].substring(0, eq);
+            if (!known.contains(key)) {
+                throw new IllegalArgumentException("Unknown " + mode + " option " + key);
+            }
+            values.put(key, args[i].substring(eq + 1));
+        }
+        return new Options(values);
+    }
+
+    /**
+     * Gives option as it is written.
+     *
+     * @param key      of option
+     * @param fallback value if option is not given
+     * @return value
+     */
+    String get(String key, String fallback) {
+        return values.getOrDefault(key, fallback);
+    }
+
+    /**
+     * Gives parsed option.
+     *
+     * @param key      of option
+     * @param parser   turns text into value, for example Integer::parseInt
+     * @param fallback value if option is not given
+     * @param <T>      type of value
+     * @return value
+     */
+    <T> T get(String key, java.util.function.Function<String, T> parser, T fallback) {
+        String value = values.get(key);
+        return value == null ? fallback : parser.apply(value);
+    }
+}
+
+/**
+ * Microbenchmark for search algorithms in the spirit of JMH: every measurement is preceded by warm-up iterations,
+ * so JIT has compiled the hot code, and reports throughput, average time and allocated memory per solve.
+ * Boards are generated from a seed, so the runs on different machines or versions are comparable.
+ * <p>
+ * Targets measured for every board size, perception scenario and algorithm:
+ * leg - one call of {@link SearchAlgorithm#solve} from Jack to the chest
+ * route - full {@link AntonNekhaev#findRoute} (one search when the algorithm allows it)
+ * legs - {@link AntonNekhaev#findRoute} with direct route and route through Tortuga searched separately
+ */
+class SolverBenchmark {
+    /**
+     * Names of measured algorithms
+     */
+    private static final String[] ALGORITHMS = {"AStar", "BackTracking", "BidirectionalAStar", "JumpPointSearch", "JumpPointSearchPlus",
+            "IterativeDeepeningAStar", "ParallelBackTracking", "DistanceFieldSearch", "HierarchicalAStar",
+            "LifelongPlanningAStar"};
+
+    /**
+     * Sides of square boards to measure
+     */
+    private int[] sizes = {9, 64, 512, 4096};
+
+    /**
+     * Perception scenarios to measure
+     */
+    private int[] scenarios = {1, 2};
+
+    /**
+     * Amount of warm-up iterations, their results are thrown away
+     */
+    private int warmupIterations = 3;
+
+    /**
+     * Amount of measured iterations
+     */
+    private int measurementIterations = 5;
+
+    /**
+     * Minimal duration of one iteration in milliseconds
+     */
+    private long iterationTime = 1000;
+
+    /**
+     * Seed for boards generation
+     */
+    private long seed = 42;
+
+    /**
+     * Probability that a free cell of board gets an extra rock
+     */
+    private double density = 0;
+
+    /**
+     * Backtracking visits states again when it finds shorter paths to them, so it is measured only on boards
+     * with side not greater than this value
+     */
+    private int maxBacktrackingSize = 2048;
+
+    /**
+     * Open list used by A*
+     */
+    private java.util.function.IntFunction<OpenList> openList = BucketQueue::new;
+
+    /**
+     * Accumulates results of solves so JIT can not throw away the measured code
+     */
+    private long sink;
+
+    /**
+     * Creates benchmark configured by command line arguments of form key=value
+     * (sizes=9,64 scenarios=1,2 warmup=3 iterations=5 time=1000 seed=42 density=0 maxBacktracking=2048 openList=bucket|heap).
+     *
+     * @param args arguments from command line, first one is the mode name and skipped
+     * @return configured benchmark
+     */
+    static SolverBenchmark fromArguments(String[] args) {
+        SolverBenchmark benchmark = new SolverBenchmark();
+        Options options = Options.parse(args, "benchmark",
+                "sizes", "scenarios", "warmup", "iterations", "time", "seed", "density", "maxBacktracking", "openList");
+        benchmark.sizes = options.get("sizes", SolverBenchmark::parseList, benchmark.sizes);
+        benchmark.scenarios = options.get("scenarios", SolverBenchmark::parseList, benchmark.scenarios);
+        benchmark.warmupIterations = options.get("warmup", Integer::parseInt, benchmark.warmupIterations);
+        benchmark.measurementIterations = options.get("iterations", Integer::parseInt, benchmark.measurementIterations);
+        benchmark.iterationTime = options.get("time", Long::parseLong, benchmark.iterationTime);
+        benchmark.seed = options.get("seed", Long::parseLong, benchmark.seed);
+        benchmark.density = options.get("density", Double::parseDouble, benchmark.density);
+        benchmark.maxBacktrackingSize = options.get("maxBacktracking", Integer::parseInt, benchmark.maxBacktrackingSize);
+        benchmark.openList = options.get("openList", value -> switch (value) {
+            case "bucket" -> BucketQueue::new;
+            case "heap" -> IndexedHeap::new;
+            default -> throw new IllegalArgumentException("Unknown open list " + value);
+        }, benchmark.openList);
+        return benchmark;
+    }
+
+    /**
+     * Parses list of numbers separated by commas.
+     *
+     * @param value string like "9,64,512"
+     * @return array of numbers
+     */
+    private static int[] parseList(String value) {
+        String[] tokens = value.split(",");
+        int[] ans = new int[tokens.length];
+        for (int i = 0; i < tokens.length; i++) {
+            ans[i] = Integer.parseInt(tokens[i].trim());
+        }
+        return ans;
+    }
+
+    /**
+     * Runs all benchmarks and prints the table with results.
+     *
+     * @param out stream for the report
+     */
+    void run(PrintStream out) {
+        out.printf("%-34s %6s %8s %5s %14s %14s %14s%n",
+                "Benchmark", "size", "scenario", "cnt", "thrpt, ops/s", "avgt, ms/op", "alloc, B/op");
+        AntonNekhaev solver = new AntonNekhaev();
+        AntonNekhaev legsSolver = new AntonNekhaev(false);
+        AntonNekhaev serialLegsSolver = new AntonNekhaev(false, false);
+        for (int size : sizes) {
+            Board board = new BoardGenerator(seed, size, size, density).next();
+            for (int scenario : scenarios) {
+                for (int algorithm = 0; algorithm < ALGORITHMS.length; algorithm++) {
+                    if ((algorithm == 1 || algorithm == 6) && size > maxBacktrackingSize) {
+                        continue;
+                    }
+                    SearchAlgorithm search = switch (algorithm) {
+                        case 0 -> new AStar(scenario, openList);
+                        case 1 -> new BackTracking(scenario);
+                        case 2 -> new BidirectionalAStar(scenario, openList);
+                        case 3 -> new JumpPointSearch(scenario);
+                        case 4 -> new JumpPointSearch(scenario, true);
+                        case 5 -> new IterativeDeepeningAStar(scenario);
+                        case 6 -> new ParallelBackTracking(scenario);
+                        case 7 -> new DistanceFieldSearch(scenario);
+                        case 8 -> new HierarchicalAStar(scenario);
+                        default -> new LifelongPlanningAStar(scenario);
+                    };
+                    String name = ALGORITHMS[algorithm];
+                    ArrayList<Tuple<Integer>> shifts = kingShifts();
+
+                    measure(out, name + ".leg", size, scenario, () ->
+                            search.solve(board.from_x, board.from_y, board.finish_x, board.finish_y, shifts, board).getPathLength());
+                    measure(out, name + ".route", size, scenario, () -> solver.findRoute(board, search).getPathLength());
+                    if (search.searchesAllLayers()) {
+                        measure(out, name + ".legs", size, scenario, () -> legsSolver.findRoute(board, search).getPathLength());
+                    }
+                    measure(out, name + ".legsSerial", size, scenario, () -> serialLegsSolver.findRoute(board, search).getPathLength());
+                }
+            }
+        }
+        out.printf("(sink %d)%n", sink);
+    }
+
+    /**
+     * Measures one benchmark and prints its row of the report.
+     *
+     * @param out      stream for the report
+     * @param name     name of benchmark
+     * @param size     side of board
+     * @param scenario perception scenario
+     * @param solve    measured operation, returns path length
+     */
+    private void measure(PrintStream out, String name, int size, int scenario, java.util.function.IntSupplier solve) {
+        try {
+            for (int i = 0; i < warmupIterations; i++) {
+                iteration(solve);
+            }
+            long operations = 0, time = 0, allocated = 0;
+            for (int i = 0; i < measurementIterations; i++) {
+                long[] iteration = iteration(solve);
+                operations += iteration[0];
+                time += iteration[1];
+                allocated += iteration[2];
+            }
+            out.printf("%-34s %6d %8d %5d %14.3f %14.3f %14s%n", name, size, scenario, operations,
+                    operations / (time / 1e9), time / 1e6 / operations,
+                    allocated < 0 ? "n/a" : Long.toString(allocated / operations));
+        } catch (StackOverflowError | OutOfMemoryError e) {
+            out.printf("%-34s %6d %8d failed: %s%n", name, size, scenario, e.getClass().getSimpleName());
+        }
+    }
+
+    /**
+     * Runs the operation repeatedly at least {@link #iterationTime} milliseconds.
+     *
+     * @param solve measured operation
+     * @return amount of operations, elapsed nanoseconds and allocated bytes (negative if JVM can not count them)
+     */
+    private long[] iteration(java.util.function.IntSupplier solve) {
+        long deadline = iterationTime * 1_000_000L;
+        long operations = 0;
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            sink += solve.getAsInt();
+            operations++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < deadline);
+        long allocatedAfter = allocatedBytes();
+        long allocated = allocatedBefore < 0 ? -1 : allocatedAfter - allocatedBefore;
+        return new long[]{operations, elapsed, allocated};
+    }
+
+    /**
+     * Amount of bytes allocated by current thread.
+     *
+     * @return bytes or -1 if JVM does not support this counter
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = java.lang.management.ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    /**
+     * Shifts for moves of Jack to eight neighbour cells.
+     *
+     * @return array of shifts
+     */
+    private static ArrayList<Tuple<Integer>> kingShifts() {
+        ArrayList<Tuple<Integer>> shifts = new ArrayList<>();
+        shifts.add(new Tuple<>(1, 0));
+        shifts.add(new Tuple<>(-1, 0));
+        shifts.add(new Tuple<>(0, 1));
+        shifts.add(new Tuple<>(0, -1));
+
+        shifts.add(new Tuple<>(1, 1));
+        shifts.add(new Tuple<>(-1, 1));
+        shifts.add(new Tuple<>(-1, -1));
+        shifts.add(new Tuple<>(1, -1));
+        return shifts;
+    }
+}
+
+/**
+ * Experiment runner that solves many random boards at once. Boards are made by {@link BoardGenerator}: every chunk
+ * of boards gets its own generator split in order of chunks, so the same seed and chunk size give the same boards,
+ * and they are solved by A* and Backtracking in both perception scenarios.
+ * Chunks are solved on all cores, and results are written in order of boards,
+ * one line per algorithm and scenario in format of data/res.txt plus the number of board:
+ * A1 677749 W 42
+ * where A - A*, B - Backtracking, number - perception scenario, then time in nanoseconds, W - win or L - lose.
+ */
+class BatchRunner {
+    /**
+     * Amount of boards to solve
+     */
+    private long count = 1000;
 
     /**
-     * array that holds coordinates for path
+     * Seed of boards
      */
-    ArrayList<Tuple<Integer>> path;
+    private long seed = 0;
 
     /**
-     * Function that solves the problem when Jack starts from (from_x, from_y).
+     * Probability that a free cell gets an extra rock
+     */
+    private double density = 0;
+
+    /**
+     * Amount of rows of boards
+     */
+    private int rows = 9;
+
+    /**
+     * Amount of columns of boards
+     */
+    private int columns = 9;
+
+    /**
+     * Amount of worker threads
+     */
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Amount of boards in one task for worker
+     */
+    private int chunk = 256;
+
+    /**
+     * File for results, null means standard output
+     */
+    private String output = null;
+
+    /**
+     * Amount of unmeasured searches of every route before measurement
+     */
+    private int warmup = 0;
+
+    /**
+     * Amount of measured searches of every route, the median time is written when there are several
+     */
+    private int iterations = 1;
+
+    /**
+     * Creates runner configured by command line arguments of form key=value
+     * (count=1000 seed=0 rows=9 columns=9 density=0 threads=8 chunk=256 out=res.txt warmup=0 iterations=1).
      *
-     * @param from_x   coordinate
-     * @param from_y   coordinate
-     * @param finish_x coordinate
-     * @param finish_y coordinate
-     * @param shifts   array of shift for Jack movement with respect to (x, y)
-     * @param board    for which we solve the problem
-     * @return instance of Result class
+     * @param args arguments from command line, first one is the mode name and skipped
+     * @return configured runner
+     */
+    static BatchRunner fromArguments(String[] args) {
+        BatchRunner runner = new BatchRunner();
+        Options options = Options.parse(args, "batch",
+                "count", "seed", "rows", "columns", "density", "threads", "chunk", "out", "warmup", "iterations");
+        runner.count = options.get("count", Long::parseLong, runner.count);
+        runner.seed = options.get("seed", Long::parseLong, runner.seed);
+        runner.rows = options.get("rows", Integer::parseInt, runner.rows);
+        runner.columns = options.get("columns", Integer::parseInt, runner.columns);
+        runner.density = options.get("density", Double::parseDouble, runner.density);
+        runner.threads = options.get("threads", Integer::parseInt, runner.threads);
+        runner.chunk = options.get("chunk", Integer::parseInt, runner.chunk);
+        runner.output = options.get("out", runner.output);
+        runner.warmup = options.get("warmup", Integer::parseInt, runner.warmup);
+        runner.iterations = options.get("iterations", Integer::parseInt, runner.iterations);
+        if (runner.threads < 1 || runner.chunk < 1 || runner.iterations < 1 || runner.warmup < 0) {
+            throw new IllegalArgumentException("threads, chunk and iterations must be positive, warmup must not be negative");
+        }
+        return runner;
+    }
+
+    /**
+     * Solves all boards and writes results.
+     *
+     * @throws FileNotFoundException if output file can not be created
+     */
+    void run() throws FileNotFoundException {
+        OutputStream stream = output == null ? System.out : new FileOutputStream(output);
+        Writer out = new BufferedWriter(new OutputStreamWriter(stream), 1 << 16);
+        java.util.concurrent.ExecutorService pool = java.util.concurrent.Executors.newFixedThreadPool(threads);
+        try {
+            // bounded window of chunks: workers run ahead of the writer, but memory stays limited
+            ArrayDeque<java.util.concurrent.Future<String>> window = new ArrayDeque<>();
+            // chunks get their generators in order, so boards do not depend on the amount of threads
+            BoardGenerator generator = new BoardGenerator(seed, rows, columns, density);
+            for (long first = 0; first < count; first += chunk) {
+                long from = first, to = min(count, first + chunk);
+                BoardGenerator boards = generator.split();
+                window.add(pool.submit(() -> solveChunk(from, to, boards)));
+                if (window.size() >= 4 * threads) {
+                    out.write(window.poll().get());
+                }
+            }
+            while (!window.isEmpty()) {
+                out.write(window.poll().get());
+            }
+            out.flush();
+        } catch (IOException | InterruptedException | java.util.concurrent.ExecutionException e) {
+            throw new RuntimeException(e);
+        } finally {
+            pool.shutdownNow();
+            if (output != null) {
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Solves boards with numbers in [from, to).
+     *
+     * @param from   number of first board
+     * @param to     number after the last board
+     * @param boards generator of boards of this chunk
+     * @return lines of results
+     */
+    private String solveChunk(long from, long to, BoardGenerator boards) {
+        // boards are already solved in parallel, so legs of one route are not
+        AntonNekhaev solver = new AntonNekhaev(true, false);
+        SearchAlgorithm[] algorithms = {new AStar(1), new AStar(2), new BackTracking(1), new BackTracking(2)};
+        String[] names = {"A1", "A2", "B1", "B2"};
+        StringBuilder sb = new StringBuilder();
+        for (long i = from; i < to; i++) {
+            Board board = boards.next();
+            for (int j = 0; j < algorithms.length; j++) {
+                Result result;
+                long time;
+                if (warmup == 0 && iterations == 1) {
+                    result = solver.findRoute(board, algorithms[j]);
+                    time = result.getAmountTimeForExecution();
+                } else {
+                    result = solver.measureRoute(board.planes(), algorithms[j], warmup, iterations);
+                    time = result.getTiming().median;
+                }
+                sb.append(names[j]).append(' ')
+                        .append(time).append(' ')
+                        .append(result.getPathLength() == Constants.INF ? 'L' : 'W').append(' ')
+                        .append(i).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+}
+
+/**
+ * Binary file format of board for very large maps. The file is a header followed by the bit planes of
+ * {@link BitBoard} exactly as they are kept in memory, so the planes are mapped with FileChannel.map
+ * and searched in place: opening takes constant time and the operating system loads only touched pages.
+ * <p>
+ * Layout (little-endian):
+ * 0 - magic (8 bytes), 8 - version, 12 - rows, 16 - columns, 20 - PAD, 24 - amount of planes,
+ * 28 - from_x, from_y, tortuga_x, tortuga_y, finish_x, finish_y (4 bytes each), 52 - zeros up to HEADER;
+ * then PLANES planes of BitBoard.words(rows, columns) longs each.
+ */
+final class BoardFile {
+    /**
+     * First bytes of every board file ("JACKBRD" and a zero byte)
+     */
+    static final long MAGIC = 0x004452424B43414AL;
+
+    /**
+     * Version of format
+     */
+    static final int VERSION = 1;
+
+    /**
+     * Size of header in bytes
+     */
+    static final int HEADER = 64;
+
+    /**
+     * Utility class
+     */
+    private BoardFile() {
+    }
+
+    /**
+     * Writes board to file.
+     *
+     * @param board    bit planes of board
+     * @param fileName name of file
+     * @throws IOException if file can not be written
+     */
+    static void write(BitBoard board, String fileName) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(fileName, "rw"); FileChannel channel = file.getChannel()) {
+            channel.truncate(0);
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putLong(MAGIC).putInt(VERSION).putInt(board.rows).putInt(board.columns)
+                    .putInt(BitBoard.PAD).putInt(BitBoard.PLANES)
+                    .putInt(board.from_x).putInt(board.from_y)
+                    .putInt(board.tortuga_x).putInt(board.tortuga_y)
+                    .putInt(board.finish_x).putInt(board.finish_y);
+            while (buffer.position() < HEADER) {
+                buffer.put((byte) 0);
+            }
+            for (int plane = 0; plane < BitBoard.PLANES; plane++) {
+                LongBuffer words = board.plane(plane);
+                for (int word = 0; word < words.capacity(); word++) {
+                    if (buffer.remaining() < Long.BYTES) {
+                        flush(channel, buffer);
+                    }
+                    buffer.putLong(words.get(word));
+                }
+            }
+            flush(channel, buffer);
+        }
+    }
+
+    /**
+     * Writes content of buffer to channel and clears buffer.
+     *
+     * @param channel to write
+     * @param buffer  with data
+     * @throws IOException if channel fails
+     */
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Maps board file into memory. Planes are read-only and stay valid after the file is closed.
+     *
+     * @param fileName name of file
+     * @return board over mapped planes
+     * @throws IOException if file can not be read or has wrong format
+     */
+    static BitBoard open(String fileName) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(fileName, "r"); FileChannel channel = file.getChannel()) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER).order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getLong() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException(fileName + " is not a board file");
+            }
+            int rows = header.getInt(), columns = header.getInt();
+            if (header.getInt() != BitBoard.PAD || header.getInt() != BitBoard.PLANES) {
+                throw new IOException(fileName + " has unsupported layout");
+            }
+            long words = BitBoard.words(rows, columns);
+            if (channel.size() != HEADER + BitBoard.PLANES * words * Long.BYTES) {
+                throw new IOException(fileName + " is truncated");
+            }
+            LongBuffer[] planes = new LongBuffer[BitBoard.PLANES];
+            for (int plane = 0; plane < BitBoard.PLANES; plane++) {
+                planes[plane] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER + plane * words * Long.BYTES, words * Long.BYTES)
+                        .order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+            }
+            BitBoard board = new BitBoard(rows, columns, planes);
+            board.from_x = header.getInt();
+            board.from_y = header.getInt();
+            board.tortuga_x = header.getInt();
+            board.tortuga_y = header.getInt();
+            board.finish_x = header.getInt();
+            board.finish_y = header.getInt();
+            return board;
+        }
+    }
+
+    /**
+     * Command line mode "mapped": solves board from file with A* and prints the length of route and times.
+     * Arguments of form key=value: file=name scenario=1; with rows=R columns=C [seed=S] the random board is
+     * generated and written to the file first.
+     *
+     * @param args arguments from command line, first one is the mode name and skipped
+     * @throws IOException if file can not be read or written
+     */
+    static void main(String[] args) throws IOException {
+        Options options = Options.parse(args, "mapped", "file", "scenario", "rows", "columns", "seed");
+        String fileName = options.get("file", null);
+        int scenario = options.get("scenario", Integer::parseInt, 1);
+        int rows = options.get("rows", Integer::parseInt, 0);
+        int columns = options.get("columns", Integer::parseInt, 0);
+        long seed = options.get("seed", Long::parseLong, 0L);
+        if (fileName == null) {
+            throw new IllegalArgumentException("file=name is required");
+        }
+        if (rows > 0 && columns > 0) {
+            write(new Board(rows, columns, seed).planes(), fileName);
+        }
+        long start = System.nanoTime();
+        BitBoard board = open(fileName);
+        long opened = System.nanoTime();
+        Result result = new AntonNekhaev().findRoute(board, new AStar(scenario));
+        System.out.printf("opened %dx%d in %f ms%n", board.rows, board.columns, (opened - start) / 1e6);
+        if (result.getPathLength() == Constants.INF) {
+            System.out.print("Lose\n");
+        } else {
+            System.out.printf("Win\n%d\n", result.getPathLength());
+        }
+        System.out.printf("%f ms\n", result.getAmountTimeForExecution() / 1e6);
+    }
+}
+
+/**
+ * Reader of scenario records: six coordinates [x,y] (Jack Sparrow, Davy Jones, Kraken, Rock, Dead Man’s Chest, Tortuga)
+ * followed by perception scenario, for example:
+ * [0,0] [4,5] [2,2] [3,3] [8,8] [0,8]
+ * 1
+ * Numbers have any amount of digits, any whitespace separates tokens, and a file can hold any amount of records.
+ * In line mode (requests of {@link SolverDaemon}) every record is one line: its fields are not looked for
+ * on the next line, so a record with a missing field fails at its own end of line.
+ * Bytes are parsed directly from a buffer, without regular expressions or Scanner.
+ */
+final class ScenarioReader implements Closeable {
+    /**
+     * Source of bytes
+     */
+    private final InputStream in;
+
+    /**
+     * Buffer of input
+     */
+    private final byte[] buffer = new byte[1 << 16];
+
+    /**
+     * Position of next byte and amount of bytes in buffer
+     */
+    private int position, limit;
+
+    /**
+     * Offset in input of the beginning of buffer, and offset of the first byte after whitespace
+     * with a line break (the beginning of a line that is not blank)
+     */
+    private long offset, lineStart;
+
+    /**
+     * Every record is one line
+     */
+    private final boolean lines;
+
+    /**
+     * Constructor for reader of records that may span lines.
+     *
+     * @param in source of records
+     */
+    ScenarioReader(InputStream in) {
+        this(in, false);
+    }
+
+    /**
+     * Constructor for reader.
+     *
+     * @param in    source of records
+     * @param lines true if every record is one line
+     */
+    ScenarioReader(InputStream in, boolean lines) {
+        this.in = in;
+        this.lines = lines;
+    }
+
+    /**
+     * Reads six coordinates of the next record.
+     *
+     * @return coordinates in order of record, or null if input is over
+     * @throws InputMismatchException if coordinates are malformed
+     * @throws UncheckedIOException   if input fails
+     */
+    ArrayList<Tuple<Integer>> readCoordinates() {
+        if (skipSpaces(true) < 0) {
+            return null;
+        }
+        ArrayList<Tuple<Integer>> coordinates = new ArrayList<>(6);
+        for (int i = 0; i < 6; i++) {
+            skipSpaces(!lines);
+            expect('[');
+            int x = readNumber();
+            expect(',');
+            int y = readNumber();
+            expect(']');
+            coordinates.add(new Tuple<>(x, y));
+        }
+        return coordinates;
+    }
+
+    /**
+     * Reads perception scenario of the record.
+     *
+     * @return 1 or 2
+     * @throws InputMismatchException if scenario is not 1 or 2
+     * @throws UncheckedIOException   if input fails
+     */
+    int readScenario() {
+        skipSpaces(!lines);
+        int scenario = readNumber();
+        if (scenario != 1 && scenario != 2) {
+            throw new InputMismatchException("Scenario must be 1 or 2");
+        }
+        return scenario;
+    }
+
+    /**
+     * Reads a word of letters, digits, '+' and '-' (for example name of algorithm).
+     *
+     * @return word
+     * @throws InputMismatchException if there is no word
+     * @throws UncheckedIOException   if input fails
+     */
+    String readWord() {
+        int c = skipSpaces(!lines);
+        StringBuilder word = new StringBuilder();
+        while (c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '+' || c == '-') {
+            word.append((char) c);
+            position++;
+            c = peek();
+        }
+        if (word.length() == 0) {
+            throw new InputMismatchException("Expected word");
+        }
+        return word.toString();
+    }
+
+    /**
+     * Consumes the end of record line: only whitespace may be left before the line break.
+     *
+     * @throws InputMismatchException if there is something else on the line (the line is not consumed then)
+     * @throws UncheckedIOException   if input fails
+     */
+    void endLine() {
+        int c = skipSpaces(false);
+        if (c >= 0 && c != '\n') {
+            throw new InputMismatchException("Unexpected " + (char) c + " at the end of record");
+        }
+        if (c == '\n') {
+            position++;
+        }
+    }
+
+    /**
+     * Skips the rest of line, for example after a malformed record.
+     *
+     * @throws UncheckedIOException if input fails
+     */
+    void skipLine() {
+        int c = peek();
+        while (c >= 0 && c != '\n') {
+            position++;
+            c = peek();
+        }
+        if (c == '\n') {
+            position++;
+        }
+    }
+
+    /**
+     * Skips the rest of a malformed record: input up to the next line that begins with '[', where the next record begins.
+     * A record in the standard format spans two lines, so skipping one line would leave its scenario as a record.
+     *
+     * @throws UncheckedIOException if input fails
+     */
+    void skipRecord() {
+        boolean atLineStart = offset + position == lineStart;
+        int c = peek();
+        while (c >= 0 && !(c == '[' && atLineStart)) {
+            if (c == '\n') {
+                atLineStart = true;
+            } else if (c != ' ' && c != '\r' && c != '\t') {
+                atLineStart = false;
+            }
+            position++;
+            c = peek();
+        }
+    }
+
+    /**
+     * Checks if there are bytes that were read from source but not parsed yet,
+     * so the next record can be parsed without waiting for source.
+     *
+     * @return true if buffer is not empty
+     */
+    boolean hasBuffered() {
+        return position < limit;
+    }
+
+    /**
+     * Skips whitespace.
+     *
+     * @param crossLines true to skip line breaks too
+     * @return next byte or -1 if input is over
+     */
+    private int skipSpaces(boolean crossLines) {
+        int c = peek();
+        boolean lineBreak = false;
+        while (c == ' ' || c == '\r' || c == '\t' || c == '\n' && crossLines) {
+            lineBreak |= c == '\n';
+            position++;
+            c = peek();
+        }
+        if (lineBreak) {
+            lineStart = offset + position;
+        }
+        return c;
+    }
+
+    /**
+     * Reads non-negative decimal number.
+     *
+     * @return number
+     */
+    private int readNumber() {
+        int c = peek();
+        if (c < '0' || c > '9') {
+            throw new InputMismatchException("Expected number");
+        }
+        long number = 0;
+        while (c >= '0' && c <= '9') {
+            number = number * 10 + (c - '0');
+            if (number > Integer.MAX_VALUE) {
+                throw new InputMismatchException("Number is too big");
+            }
+            position++;
+            c = peek();
+        }
+        return (int) number;
+    }
+
+    /**
+     * Consumes the expected byte.
+     *
+     * @param expected byte
+     */
+    private void expect(char expected) {
+        if (peek() != expected) {
+            throw new InputMismatchException("Expected " + expected);
+        }
+        position++;
+    }
+
+    /**
+     * Looks at the next byte, refilling the buffer if needed.
+     *
+     * @return next byte or -1 if input is over
+     */
+    private int peek() {
+        if (position == limit) {
+            offset += limit;
+            try {
+                limit = in.read(buffer, 0, buffer.length);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position];
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
+
+/**
+ * Solver of a stream of scenario records (see {@link ScenarioReader}). Records are read by chunks, chunks are solved
+ * by a pool of threads, and answers are written in order of input, one line per record:
+ * Win 10 [0,0] [1,0] ... [8,8]
+ * Lose
+ * Error: Davy invalid place
+ * Error: Record 7: Expected ]
+ * A malformed record is answered with one error in its place, and reading goes on from the next record
+ * (see {@link ScenarioReader#skipRecord()}); test/StreamSolverTest.java checks this.
+ */
+class StreamSolver {
+    /**
+     * File with records, "-" means standard input
+     */
+    private String input = "-";
+
+    /**
+     * File for answers, "-" means standard output
+     */
+    private String output = "-";
+
+    /**
+     * Algorithm, one of {@link SearchAlgorithm#NAMES}
+     */
+    private String algorithm = "astar";
+
+    /**
+     * Size of boards
+     */
+    private int rows = 9, columns = 9;
+
+    /**
+     * Amount of worker threads
+     */
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Amount of records in one task for worker
+     */
+    private int chunk = 1024;
+
+    /**
+     * Creates solver configured by command line arguments of form key=value
+     * (in=input.txt out=answers.txt algorithm=astar|backtracking|... rows=9 columns=9 threads=8 chunk=1024).
+     *
+     * @param args arguments from command line, first one is the mode name and skipped
+     * @return configured solver
      */
-    abstract Result solve(int from_x, int from_y, int finish_x, int finish_y, ArrayList<Tuple<Integer>> shifts, Board board);
+    static StreamSolver fromArguments(String[] args) {
+        StreamSolver solver = new StreamSolver();
+        Options options = Options.parse(args, "stream", "in", "out", "algorithm", "rows", "columns", "threads", "chunk");
+        solver.input = options.get("in", solver.input);
+        solver.output = options.get("out", solver.output);
+        solver.algorithm = options.get("algorithm", solver.algorithm);
+        solver.rows = options.get("rows", Integer::parseInt, solver.rows);
+        solver.columns = options.get("columns", Integer::parseInt, solver.columns);
+        solver.threads = options.get("threads", Integer::parseInt, solver.threads);
+        solver.chunk = options.get("chunk", Integer::parseInt, solver.chunk);
+        if (!SearchAlgorithm.NAMES.contains(solver.algorithm)) {
+            throw new IllegalArgumentException("Unknown algorithm " + solver.algorithm);
+        }
+        if (solver.threads < 1 || solver.chunk < 1) {
+            throw new IllegalArgumentException("threads and chunk must be positive");
+        }
+        return solver;
+    }
 
     /**
-     * Function for reconstruct the path.
+     * Reads all records, solves them and writes answers.
      *
-     * @param from_x   coordinate
-     * @param from_y   coordinate
-     * @param finish_x coordinate
-     * @param finish_y coordinate
-     * @param map      dwo dimensional array where in cell with coordinate (x, y) written the minimal amount of steps that needed from (from_x, from_y) to be in
-     * @param shifts   array of shift for Jack movement with respect to (x, y)
-     * @return tuple of coordinates which make the path
+     * @throws IOException if input or output fails
      */
-    ArrayList<Tuple<Integer>> getPath(int from_x, int from_y, int finish_x, int finish_y, int[][] map, ArrayList<Tuple<Integer>> shifts) {
-        ArrayList<Tuple<Integer>> ans = new ArrayList<>();
-        int x = finish_x;
-        int y = finish_y;
-
-        while (x != from_x || y != from_y) {
-            boolean flag = false;
-            for (Tuple<Integer> shift : shifts) {
-                int new_x = x + shift.getX();
-                int new_y = y + shift.getY();
-
-                if (!(0 <= new_x && new_x < map.length && 0 <= new_y && new_y < map[0].length)) {
-                    continue;
+    void run() throws IOException {
+        InputStream in = input.equals("-") ? System.in : new FileInputStream(input);
+        OutputStream stream = output.equals("-") ? System.out : new FileOutputStream(output);
+        Writer out = new BufferedWriter(new OutputStreamWriter(stream), 1 << 16);
+        java.util.concurrent.ExecutorService pool = java.util.concurrent.Executors.newFixedThreadPool(threads);
+        try (ScenarioReader reader = new ScenarioReader(in)) {
+            ArrayDeque<java.util.concurrent.Future<String>> window = new ArrayDeque<>();
+            long record = 0;
+            boolean over = false;
+            while (!over) {
+                ArrayList<ArrayList<Tuple<Integer>>> coordinates = new ArrayList<>(chunk);
+                int[] scenarios = new int[chunk];
+                String[] errors = new String[chunk];
+                while (coordinates.size() < chunk) {
+                    ArrayList<Tuple<Integer>> next;
+                    try {
+                        next = reader.readCoordinates();
+                        if (next == null) {
+                            over = true;
+                            break;
+                        }
+                        scenarios[coordinates.size()] = reader.readScenario();
+                    } catch (InputMismatchException e) {
+                        // malformed record is answered in its place like a record with incorrect places
+                        reader.skipRecord();
+                        next = null;
+                        errors[coordinates.size()] = "Record " + (record + 1) + ": " + e.getMessage();
+                    }
+                    coordinates.add(next);
+                    record++;
                 }
-
-                if (map[new_x][new_y] + 1 == map[x][y]) {
-                    ans.add(0, new Tuple<>(x, y));
-                    x = new_x;
-                    y = new_y;
-                    flag = true;
-                    break;
+                if (!coordinates.isEmpty()) {
+                    window.add(pool.submit(() -> solveChunk(coordinates, scenarios, errors)));
+                }
+                while (window.size() >= 4 * threads || (over && !window.isEmpty())) {
+                    out.write(window.poll().get());
                 }
             }
-            if (!flag) {
-                return null;
+            out.flush();
+        } catch (InterruptedException | java.util.concurrent.ExecutionException e) {
+            throw new IOException(e);
+        } finally {
+            pool.shutdownNow();
+            if (!output.equals("-")) {
+                out.close();
             }
         }
-        ans.add(0, new Tuple<>(from_x, from_y));
-        return ans;
     }
 
     /**
-     * Getter for path length
+     * Solves chunk of records.
      *
-     * @return path length
+     * @param coordinates of records, null for malformed records
+     * @param scenarios   of records
+     * @param errors      messages for malformed records
+     * @return answer lines
      */
-    int getPathLength() {
-        return pathLength;
+    private String solveChunk(ArrayList<ArrayList<Tuple<Integer>>> coordinates, int[] scenarios, String[] errors) {
+        // records are already solved in parallel, so legs of one route are not
+        AntonNekhaev solver = new AntonNekhaev(true, false);
+        SearchAlgorithm[] algorithms = new SearchAlgorithm[3];
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < coordinates.size(); i++) {
+            if (coordinates.get(i) == null) {
+                sb.append("Error: ").append(errors[i]).append('\n');
+                continue;
+            }
+            Board board;
+            try {
+                board = new Board(rows, columns, coordinates.get(i));
+            } catch (IncorrectPlace e) {
+                sb.append("Error: ").append(e.getMessage()).append('\n');
+                continue;
+            }
+            int scenario = scenarios[i];
+            if (algorithms[scenario] == null) {
+                algorithms[scenario] = SearchAlgorithm.create(algorithm, scenario);
+            }
+            appendAnswer(sb, solver.findRoute(board, algorithms[scenario]));
+        }
+        return sb.toString();
     }
 
     /**
-     * Funtion that make attempt to kill Kraken based on current state
+     * Appends answer line for result of route search.
      *
-     * @param state current state of game
+     * @param sb     builder of answers
+     * @param result of route search
      */
-    void tryKillKraken(State state) {
-        for (Tuple<Integer> shift : shifts) {
-            int new_x = state.getX() + shift.getX();
-            int new_y = state.getY() + shift.getY();
-            if (!board.isValidCoordinates(new_x, new_y)) {
-                continue;
-            }
-            if (board.isKrakenHeart(new_x, new_y) && state.cask) {
-                state.krakenIsDead = true;
-                break;
-            }
+    static void appendAnswer(StringBuilder sb, Result result) {
+        if (result.getPathLength() == Constants.INF) {
+            sb.append("Lose\n");
+            return;
         }
+        Path path = result.getPath();
+        sb.append("Win ").append(path.length());
+        for (int j = 0; j < path.size(); j++) {
+            sb.append(" [").append(path.x(j)).append(',').append(path.y(j)).append(']');
+        }
+        sb.append('\n');
     }
 }
 
 /**
- * Supporting class for returning values from Search algorithm.
+ * Long-running solver that listens on a Unix domain socket, so JVM starts and JIT warms up once.
+ * Every connection is handled by its own virtual thread (when the runtime has them, otherwise by a thread
+ * of cached pool) and can send many requests, one per line: six coordinates as in input.txt, scenario and
+ * name of algorithm (see {@link SearchAlgorithm#NAMES}), for example
+ * [0,0] [4,2] [2,7] [3,4] [7,4] [8,8] 1 astar
+ * Answers are lines in the format of {@link StreamSolver}: "Win 10 [0,0] ... [8,8]", "Lose" or "Error: message".
+ * Every request line gets exactly one answer line: a request with a missing or extra field is answered with an error
+ * and only its own line is skipped (see test/SolverDaemonTest.java).
+ * Answers are flushed when there are no more buffered requests, so pipelined requests are answered in one write.
  */
-class Result {
-    /**
-     * min path length after execution of algorithm
-     */
-    private final int pathLength;
-
+class SolverDaemon {
     /**
-     * array that holds coordinates for path
+     * Path of socket file
      */
-    private final ArrayList<Tuple<Integer>> path;
+    private String socket = "anton-nekhaev.sock";
 
     /**
-     * variable that holds amount of time of algorithm execution
+     * Size of boards
      */
-    private final long amountTimeForExecution;
+    private int rows = 9, columns = 9;
 
     /**
-     * Constructor for Result class that just create an instance of it
+     * Creates daemon configured by command line arguments of form key=value (socket=/tmp/solver.sock rows=9 columns=9).
      *
-     * @param pathLength             - min path length after execution of algorithm
-     * @param path                   - array that holds coordinates for path
-     * @param amountTimeForExecution - variable that holds amount of time of algorithm execution
+     * @param args arguments from command line, first one is the mode name and skipped
+     * @return configured daemon
      */
-    Result(int pathLength, ArrayList<Tuple<Integer>> path, long amountTimeForExecution) {
-        this.pathLength = pathLength;
-        this.path = path;
-        this.amountTimeForExecution = amountTimeForExecution;
+    static SolverDaemon fromArguments(String[] args) {
+        SolverDaemon daemon = new SolverDaemon();
+        Options options = Options.parse(args, "serve", "socket", "rows", "columns");
+        daemon.socket = options.get("socket", daemon.socket);
+        daemon.rows = options.get("rows", Integer::parseInt, daemon.rows);
+        daemon.columns = options.get("columns", Integer::parseInt, daemon.columns);
+        return daemon;
     }
 
     /**
-     * Getter for path length.
+     * Creates executor with virtual thread per task if the runtime has them (Java 21+), otherwise cached pool.
      *
-     * @return path length
+     * @return executor for connections
      */
-    int getPathLength() {
-        return pathLength;
+    static java.util.concurrent.ExecutorService connectionExecutor() {
+        try {
+            return (java.util.concurrent.ExecutorService) java.util.concurrent.Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return java.util.concurrent.Executors.newCachedThreadPool();
+        }
     }
 
     /**
-     * Getter for array of path coordinates.
+     * Accepts connections until the process is stopped. The socket file is removed before binding and on exit.
      *
-     * @return array of path
+     * @throws IOException if socket can not be bound
      */
-    ArrayList<Tuple<Integer>> getPath() {
-        return path;
+    void run() throws IOException {
+        java.nio.file.Path file = java.nio.file.Path.of(socket);
+        java.nio.file.Files.deleteIfExists(file);
+        java.util.concurrent.ExecutorService executor = connectionExecutor();
+        try (java.nio.channels.ServerSocketChannel server = java.nio.channels.ServerSocketChannel.open(java.net.StandardProtocolFamily.UNIX)) {
+            server.bind(java.net.UnixDomainSocketAddress.of(file));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    java.nio.file.Files.deleteIfExists(file);
+                } catch (IOException ignored) {
+                    // the process is stopping anyway
+                }
+            }));
+            System.out.printf("listening on %s%n", file.toAbsolutePath());
+            while (true) {
+                java.nio.channels.SocketChannel connection = server.accept();
+                executor.execute(() -> serve(connection));
+            }
+        } finally {
+            executor.shutdownNow();
+            java.nio.file.Files.deleteIfExists(file);
+        }
     }
 
     /**
-     * Getter for amount time for execution of algorithm.
+     * Answers requests of one connection until it is closed. Algorithms are created once per connection
+     * for every name and scenario, so their arrays are reused between requests.
      *
-     * @return amount of time
+     * @param connection socket of client
      */
-    long getAmountTimeForExecution() {
-        return amountTimeForExecution;
+    private void serve(java.nio.channels.SocketChannel connection) {
+        AntonNekhaev solver = new AntonNekhaev(true, false);
+        HashMap<String, SearchAlgorithm> algorithms = new HashMap<>();
+        StringBuilder sb = new StringBuilder();
+        try (connection;
+             ScenarioReader reader = new ScenarioReader(java.nio.channels.Channels.newInputStream(connection), true);
+             OutputStream out = new BufferedOutputStream(java.nio.channels.Channels.newOutputStream(connection), 1 << 16)) {
+            while (true) {
+                ArrayList<Tuple<Integer>> coordinates;
+                try {
+                    coordinates = reader.readCoordinates();
+                    if (coordinates == null) {
+                        break;
+                    }
+                    int scenario = reader.readScenario();
+                    String name = reader.readWord();
+                    reader.endLine();
+                    SearchAlgorithm algorithm = algorithms.get(name + scenario);
+                    if (algorithm == null) {
+                        algorithm = SearchAlgorithm.create(name, scenario);
+                        algorithms.put(name + scenario, algorithm);
+                    }
+                    StreamSolver.appendAnswer(sb, solver.findRoute(new Board(rows, columns, coordinates), algorithm));
+                } catch (InputMismatchException e) {
+                    // the rest of this request line is dropped, the next line is the next request
+                    reader.skipLine();
+                    sb.append("Error: ").append(e.getMessage()).append('\n');
+                } catch (IllegalArgumentException | IncorrectPlace e) {
+                    sb.append("Error: ").append(e.getMessage()).append('\n');
+                }
+                for (int i = 0; i < sb.length(); i++) {
+                    out.write(sb.charAt(i));
+                }
+                sb.setLength(0);
+                if (!reader.hasBuffered()) {
+                    out.flush();
+                }
+            }
+        } catch (IOException | UncheckedIOException e) {
+            // client has gone, nothing to answer
+        }
     }
 }
 
 /**
- * Implementation of A* algorithm
+ * Writer of answers that puts text or binary records into one reused byte buffer and writes it
+ * to the channel only when it is full or flushed, so big maps and many answers are written in large chunks
+ * instead of one formatted print per cell.
+ * Text is the same as it was printed before: "Lose", or "Win", length, cells of path, map with path and time.
  */
-class AStar extends SearchAlgorithm {
+final class ResultSink implements Closeable {
     /**
-     * Constructor for A* algorithm
-     *
-     * @param scenario number of scenario
+     * What is written for every answer
      */
-    AStar(int scenario) {
-        this.scenario = scenario;
-    }
+    enum Mode {
+        /**
+         * Text answer with map of path
+         */
+        MAP,
 
-    /**
-     * Node for priority queue that can be compared by f = g + h and h, where h - heuristics, g - amount of steps from begin.
-     * Also, node has state inside.
-     */
-    static private class Node implements Comparable {
         /**
-         * Current state
+         * Text answer without map
          */
-        State state;
+        PATH,
 
         /**
-         * f = g + h
-         * g - amount of steps from begin
-         * h - heuristics
+         * Binary record: int length (-1 if there is no route), int amount of cells, int x and y of every cell,
+         * long time of search in nanoseconds; numbers are big-endian
          */
-        int g, h, f;
+        BINARY;
 
         /**
-         * Constructor for Node class.
+         * Gives mode by its name from command line.
          *
-         * @param state current
-         * @param g     amount of steps from start coordinate
-         * @param h     heuristics
+         * @param name map, path or binary
+         * @return mode
+         * @throws IllegalArgumentException if name is unknown
          */
-        Node(State state, int g, int h) {
-            f = g + h;
-            this.g = g;
-            this.h = h;
-            this.state = state;
+        static Mode of(String name) {
+            return switch (name) {
+                case "map" -> MAP;
+                case "path" -> PATH;
+                case "binary" -> BINARY;
+                default -> throw new IllegalArgumentException("Unknown output mode " + name);
+            };
         }
+    }
 
-        @Override
-        public int compareTo(Object o) {
-            Node other = (Node) o;
-            if (f != other.f)
-                return (f - other.f);
-            return h - other.h;
-        }
+    /**
+     * Size of buffer in bytes
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Line around the map
+     */
+    private static final byte[] SEPARATOR = "-------------------\n".getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+
+    /**
+     * Channel where buffer is written
+     */
+    private final java.nio.channels.WritableByteChannel channel;
+
+    /**
+     * Close the channel when the sink is closed (false for standard output)
+     */
+    private final boolean ownsChannel;
+
+    /**
+     * What is written for every answer
+     */
+    private final Mode mode;
+
+    /**
+     * Bytes that are not written to the channel yet
+     */
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    /**
+     * Constructor of sink.
+     *
+     * @param channel     where answers are written
+     * @param ownsChannel close the channel when the sink is closed
+     * @param mode        what is written for every answer
+     */
+    ResultSink(java.nio.channels.WritableByteChannel channel, boolean ownsChannel, Mode mode) {
+        this.channel = channel;
+        this.ownsChannel = ownsChannel;
+        this.mode = mode;
     }
 
     /**
-     * Getter for path length.
+     * Creates sink that replaces the content of file.
      *
-     * @return INF if there is no path else path length
+     * @param name of file
+     * @param mode what is written for every answer
+     * @return sink
+     * @throws IOException if file can not be created
      */
-    public int getPathLength() {
-        return pathLength;
+    static ResultSink toFile(String name, Mode mode) throws IOException {
+        FileChannel channel = FileChannel.open(java.nio.file.Path.of(name), java.nio.file.StandardOpenOption.CREATE,
+                java.nio.file.StandardOpenOption.WRITE, java.nio.file.StandardOpenOption.TRUNCATE_EXISTING);
+        return new ResultSink(channel, true, mode);
     }
 
     /**
-     * Heuristic function that count straight path between to coordinates.
+     * Creates sink for standard output, closing the sink does not close standard output.
      *
-     * @param from_x   coordinate
-     * @param from_y   coordinate
-     * @param finish_x coordinate
-     * @param finish_y coordinate
-     * @return length of straight path between to coordinates
+     * @param mode what is written for every answer
+     * @return sink
      */
-    int h(int from_x, int from_y, int finish_x, int finish_y) {
-        int diag = min(abs(finish_x - from_x), abs(finish_y - from_y));
-        return diag + abs(abs(from_x - finish_x) - abs(from_y - finish_y));
+    static ResultSink toStandardOutput(Mode mode) {
+        return new ResultSink(java.nio.channels.Channels.newChannel(System.out), false, mode);
     }
 
     /**
-     * Caller for function that solves the problem when Jack starts from (from_x, from_y) to (finish_x, finish_y).
+     * Writes answer for the route.
      *
-     * @param from_x   coordinate
-     * @param from_y   coordinate
-     * @param finish_x coordinate
-     * @param finish_y coordinate
-     * @param shifts   array of shift for Jack movement with respect to (x, y)
-     * @param board    for which we solve the problem
-     * @return instance of Result class
+     * @param route   result of route search
+     * @param rows    of board
+     * @param columns of board
+     * @throws IOException if the buffer can not be written
      */
-    public Result solve(int from_x, int from_y, int finish_x, int finish_y, ArrayList<Tuple<Integer>> shifts, Board board) {
-        long startTime = System.nanoTime();
-        this.from_x = from_x;
-        this.from_y = from_y;
-        this.finish_x = finish_x;
-        this.finish_y = finish_y;
-        this.shifts = shifts;
-        this.board = board;
-        map = new int[board.rows][board.columns];
-        for (int i = 0; i < board.rows; i++) {
-            for (int j = 0; j < board.columns; j++) {
-                map[i][j] = Constants.INF;
+    void writeRoute(Result route, int rows, int columns) throws IOException {
+        Path path = route.getPath();
+        boolean lose = route.getPathLength() == Constants.INF;
+        if (mode == Mode.BINARY) {
+            int size = lose ? 0 : path.size();
+            ensure(8);
+            buffer.putInt(lose ? -1 : path.length()).putInt(size);
+            for (int i = 0; i < size; i++) {
+                ensure(8);
+                buffer.putInt(path.x(i)).putInt(path.y(i));
             }
+            ensure(8);
+            buffer.putLong(route.getAmountTimeForExecution());
+            return;
         }
-
-        solvePrivate();
-        pathLength = map[finish_x][finish_y];
-        if (pathLength != Constants.INF) {
-            path = getPath(this.from_x, this.from_y, this.finish_x, this.finish_y, this.map, this.shifts);
+        if (lose) {
+            putText("Lose");
+            return;
         }
-
-        long endTime = System.nanoTime();
-        amountTimeForExecution = (endTime - startTime);
-        return new Result(pathLength, path, amountTimeForExecution);
+        putText("Win\n");
+        putNumber(path.length());
+        putChar('\n');
+        for (int i = 0; i < path.size(); i++) {
+            putChar('[');
+            putNumber(path.x(i));
+            putChar(',');
+            putNumber(path.y(i));
+            putText("] ");
+        }
+        putChar('\n');
+        if (mode == Mode.MAP) {
+            writePathMap(path, rows, columns);
+        }
+        putText(String.format("%f ms\n", (double) route.getAmountTimeForExecution() / 1e6));
     }
 
     /**
-     * Private solve function that is called by method solve.
+     * Writes map where cells of path are marked, between separator lines.
+     *
+     * @param path    cells of path
+     * @param rows    of board
+     * @param columns of board
+     * @throws IOException if the buffer can not be written
      */
-    public void solvePrivate() {
-        map[from_x][from_y] = 0;
-        PriorityQueue<Node> q = new PriorityQueue<>();
-
-        q.add(new Node(new State(from_x, from_y), 0, h(from_x, from_y, finish_x, finish_y)));
-        while (q.size() != 0) {
-            Node cur = q.poll();
-            State state = cur.state;
-            int current_x = state.getX();
-            int current_y = state.getY();
-            if (current_x == board.tortuga_x && current_y == board.tortuga_y) {
-                state.cask = true;
-            }
-            if (current_x == finish_x && current_y == finish_y) {
-                return;
-            }
-
-            if (!state.krakenIsDead && state.cask) {
-                tryKillKraken(state);
-            }
-
-            for (Tuple<Integer> shift : shifts) {
-                int new_x = current_x + shift.getX();
-                int new_y = current_y + shift.getY();
-
-                if (!board.isValidCoordinates(new_x, new_y)) {
-                    continue;
-                }
-
-                if (!((board.isKrakenCell(new_x, new_y) && state.krakenIsDead) || !board.isEnemy(new_x, new_y))) {
-                    continue;
-                }
-
-                if (map[new_x][new_y] > state.pathLength + 1) {
-                    map[new_x][new_y] = state.pathLength + 1;
-                    q.add(new Node(state.move(new_x, new_y), state.pathLength + 1, h(new_x, new_y, finish_x, board.finish_y)));
-
-                }
+    private void writePathMap(Path path, int rows, int columns) throws IOException {
+        BitSet onPath = new BitSet(rows * columns);
+        for (int i = 0; i < path.size(); i++) {
+            onPath.set(path.x(i) * columns + path.y(i));
+        }
+        put(SEPARATOR);
+        writeHeader(rows);
+        for (int i = 0; i < rows; i++) {
+            putNumber(i);
+            putChar(' ');
+            for (int j = 0; j < columns; j++) {
+                ensure(2);
+                buffer.put((byte) (onPath.get(i * columns + j) ? Constants.PATH : Constants.BLANK)).put((byte) ' ');
             }
-            if (scenario == 2) {
-                ArrayList<Tuple<Integer>> shifts2 = new ArrayList<>();
-                shifts2.add(new Tuple<>(2, 0));
-                shifts2.add(new Tuple<>(0, 2));
-                shifts2.add(new Tuple<>(-2, 0));
-                shifts2.add(new Tuple<>(0, -2));
-                for (Tuple<Integer> shift : shifts2) {
-                    int new_x = current_x + shift.getX();
-                    int new_y = current_y + shift.getY();
-
-                    int toCheckX = current_x + shift.getX() / 2;
-                    int toCheckY = current_y + shift.getY() / 2;
-
-                    if (!board.isValidCoordinates(new_x, new_y) || !board.isValidCoordinates(toCheckX, toCheckY)) {
-                        continue;
-                    }
-
-                    if (!((board.isKrakenCell(new_x, new_y) && state.krakenIsDead) || !board.isEnemy(new_x, new_y))) {
-                        continue;
-                    }
-
-                    if (!((board.isKrakenCell(toCheckX, toCheckY) && state.krakenIsDead) || !board.isEnemy(toCheckX, toCheckY))) {
-                        continue;
-                    }
+            putChar('\n');
+        }
+        put(SEPARATOR);
+    }
 
-                    if (map[new_x][new_y] > state.pathLength + 2) {
-                        map[new_x][new_y] = state.pathLength + 2;
-                        State newState = state.move(new_x, new_y);
-                        newState.pathLength += 1;
-                        q.add(new Node(newState, state.pathLength + 2, h(new_x, new_y, finish_x, board.finish_y)));
-                    }
-                }
+    /**
+     * Writes board as it is (actors and perception zones) without separator lines.
+     *
+     * @param board content of board
+     * @param count amount of numbers in header (the header is numbered by rows)
+     * @throws IOException if the buffer can not be written
+     */
+    void writeBoard(char[][] board, int count) throws IOException {
+        writeHeader(count);
+        for (int i = 0; i < board.length; i++) {
+            putNumber(i);
+            putChar(' ');
+            for (char cell : board[i]) {
+                ensure(2);
+                buffer.put((byte) cell).put((byte) ' ');
             }
+            putChar('\n');
         }
     }
 
-}
-
-/**
- * Implementation of Backtracking algorithm.
- */
-class BackTracking extends SearchAlgorithm {
     /**
-     * Constructor for BackTracking* algorithm
+     * Writes line with numbers of columns of map. As before, it has as many numbers as there are rows.
      *
-     * @param scenario number of scenario
+     * @param count amount of numbers
+     * @throws IOException if the buffer can not be written
      */
-    BackTracking(int scenario) {
-        this.scenario = scenario;
+    private void writeHeader(int count) throws IOException {
+        putText("  ");
+        for (int i = 0; i < count; i++) {
+            putNumber(i);
+            putChar(' ');
+        }
+        putChar('\n');
     }
 
     /**
-     * Caller for function that solves the problem when Jack starts from (from_x, from_y) to (finish_x, finish_y).
+     * Puts decimal digits of non-negative number.
      *
-     * @param from_x   coordinate
-     * @param from_y   coordinate
-     * @param finish_x coordinate
-     * @param finish_y coordinate
-     * @param shifts   array of shift for Jack movement
-     * @param board    for which we solve the problem
-     * @return instance of Result class
+     * @param number to write
+     * @throws IOException if the buffer can not be written
      */
-    public Result solve(int from_x, int from_y, int finish_x, int finish_y, ArrayList<Tuple<Integer>> shifts, Board board) {
-        long startTime = System.nanoTime();
-        this.from_x = from_x;
-        this.from_y = from_y;
-        this.finish_x = finish_x;
-        this.finish_y = finish_y;
-        this.shifts = shifts;
-        this.board = board;
-
-        map = new int[board.rows][board.columns];
-
-        for (int i = 0; i < board.rows; i++) {
-            for (int j = 0; j < board.columns; j++) {
-                map[i][j] = Constants.INF;
-            }
+    private void putNumber(int number) throws IOException {
+        ensure(10);
+        int digits = 1;
+        for (int rest = number / 10; rest > 0; rest /= 10) {
+            digits++;
         }
-        State start = new State(from_x, from_y);
-        backTrackingSearch(start);
-        pathLength = map[finish_x][finish_y];
-        if (pathLength != Constants.INF) {
-            path = getPath(this.from_x, this.from_y, this.finish_x, this.finish_y, this.map, this.shifts);
+        int end = buffer.position() + digits;
+        for (int i = end - 1; i >= buffer.position(); i--) {
+            buffer.put(i, (byte) ('0' + number % 10));
+            number /= 10;
         }
-        long endTime = System.nanoTime();
-        amountTimeForExecution = endTime - startTime;
-        return new Result(pathLength, path, amountTimeForExecution);
+        buffer.position(end);
     }
 
     /**
-     * Private recursive function that solves the problem.
+     * Puts one ASCII character.
      *
-     * @param state start state of algorithm
+     * @param c character
+     * @throws IOException if the buffer can not be written
      */
-    private void backTrackingSearch(State state) {
-        int current_x = state.getX();
-        int current_y = state.getY();
-
-        if (current_x == finish_x && current_y == finish_y) {
-            map[current_x][current_y] = min(map[current_x][current_y], state.pathLength);
-            return;
-        }
-
-        if (map[current_x][current_y] > state.pathLength) {
-            map[current_x][current_y] = state.pathLength;
-        } else {
-            return;
-        }
+    private void putChar(char c) throws IOException {
+        ensure(1);
+        buffer.put((byte) c);
+    }
 
-        if (board.getPiece(current_x, current_y) == Constants.TORTUGA) {
-            state.cask = true;
-        }
+    /**
+     * Puts ASCII text.
+     *
+     * @param text to write
+     * @throws IOException if the buffer can not be written
+     */
+    private void putText(String text) throws IOException {
+        put(text.getBytes(java.nio.charset.StandardCharsets.US_ASCII));
+    }
 
-        if (!state.krakenIsDead && state.cask) {
-            tryKillKraken(state);
+    /**
+     * Puts bytes, text longer than the buffer is written in parts.
+     *
+     * @param bytes to write
+     * @throws IOException if the buffer can not be written
+     */
+    private void put(byte[] bytes) throws IOException {
+        int offset = 0;
+        while (offset < bytes.length) {
+            ensure(1);
+            int length = min(bytes.length - offset, buffer.remaining());
+            buffer.put(bytes, offset, length);
+            offset += length;
         }
+    }
 
-        for (Tuple<Integer> shift : shifts) {
-            int new_x = current_x + shift.getX();
-            int new_y = current_y + shift.getY();
-
-            if (!board.isValidCoordinates(new_x, new_y)) {
-                continue;
-            }
-
-            if ((board.isKrakenCell(new_x, new_y) && state.krakenIsDead) || !board.isEnemy(new_x, new_y)) {
-                if (map[new_x][new_y] > state.pathLength + 1) {
-                    backTrackingSearch(state.move(new_x, new_y));
-                }
-            }
+    /**
+     * Makes room in buffer, writing it to the channel when it is needed.
+     *
+     * @param bytes amount of bytes that will be put
+     * @throws IOException if the buffer can not be written
+     */
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
         }
-        if (scenario == 2) {
-            ArrayList<Tuple<Integer>> shifts2 = new ArrayList<>();
-            shifts2.add(new Tuple<>(2, 0));
-            shifts2.add(new Tuple<>(0, 2));
-            shifts2.add(new Tuple<>(-2, 0));
-            shifts2.add(new Tuple<>(0, -2));
-
-            for (Tuple<Integer> shift : shifts2) {
-                int new_x = current_x + shift.getX();
-                int new_y = current_y + shift.getY();
-
-                int checkX = current_x + shift.getX() / 2;
-                int checkY = current_x + shift.getY() / 2;
-
-                if (!board.isValidCoordinates(new_x, new_y)) {
-                    continue;
-                }
-                if (!board.isValidCoordinates(checkX, checkY)) {
-                    continue;
-                }
+    }
 
-                if ((board.isKrakenCell(new_x, new_y) && state.krakenIsDead) || !board.isEnemy(new_x, new_y)) {
-                    if ((board.isKrakenCell(checkX, checkY) && state.krakenIsDead) || !board.isEnemy(checkX, checkY)) {
-                        if (map[new_x][new_y] > state.pathLength + 2) {
-                            State newState = state.move(new_x, new_y);
-                            newState.pathLength += 1;
-                            backTrackingSearch(state);
-                        }
-                    }
-                }
-            }
+    /**
+     * Writes all buffered bytes to the channel.
+     *
+     * @throws IOException if the buffer can not be written
+     */
+    void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
         }
+        buffer.clear();
     }
 
     /**
-     * Getter for path length.
+     * Writes buffered bytes and closes the channel if the sink owns it.
      *
-     * @return path length
+     * @throws IOException if the buffer can not be written or the channel can not be closed
      */
     @Override
-    public int getPathLength() {
-        return pathLength;
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            if (ownsChannel) {
+                channel.close();
+            }
+        }
     }
-}
\ No newline at end of file
+}
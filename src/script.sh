@@ -1,4 +1,2 @@
-for (( c=1; c<=1000; c++ )) 
-do
-	java Main >> res.txt
-done
+javac AntonNekhaev.java
+java AntonNekhaev batch count=1000 out=res.txt
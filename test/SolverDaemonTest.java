@@ -0,0 +1,102 @@
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.util.*;
+
+/**
+ * Test of {@link SolverDaemon}: pipelined requests, including malformed ones, get one answer line each, in order.
+ * Runs without test framework:
+ * javac -d out src/AntonNekhaev.java test/SolverDaemonTest.java && java -cp out SolverDaemonTest
+ */
+public class SolverDaemonTest {
+    /**
+     * Requests sent in one write and the beginning of the expected answer for each of them
+     */
+    private static final String[][] REQUESTS = {
+            {"[0,0] [4,2] [2,7] [3,4] [7,4] [8,8] 1 astar", "Win "},
+            {"[0,0] [4,2] [2,7] [3,4] [7,4] [8,8] 1 nosuch", "Error: Unknown algorithm nosuch"},
+            {"[0,0] [4,2] [2,7] [3,4] [7,4] [8,8] 1", "Error: Expected word"},
+            {"[0,0] [4,2] [2,7] [3,4] [7,4] [8,8] 2 jpsplus", "Win "},
+            {"[0,0] [4,2", "Error: Expected ]"},
+            {"[0,0] [4,2] [2,7] [3,4] [7,4] [9,9] 1 astar", "Error: "},
+            {"[0,0] [4,2] [2,7] [3,4] [7,4] [8,8] 1 astar extra", "Error: Unexpected e at the end of record"},
+            {"[0,0] [4,2] [2,7] [3,4] [7,4] [8,8] 2 lpa", "Win "},
+    };
+
+    /**
+     * Starts daemon on a temporary socket, sends all requests at once and checks answers.
+     *
+     * @param args not used
+     * @throws Exception if the test fails
+     */
+    public static void main(String[] args) throws Exception {
+        File socket = File.createTempFile("solver", ".sock");
+        Thread daemon = new Thread(() -> {
+            try {
+                SolverDaemon.fromArguments(new String[]{"serve", "socket=" + socket}).run();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        daemon.setDaemon(true);
+        daemon.start();
+
+        SocketChannel connection = connect(socket);
+        StringBuilder pipelined = new StringBuilder();
+        for (String[] request : REQUESTS) {
+            pipelined.append(request[0]).append('\n');
+        }
+        OutputStream out = Channels.newOutputStream(connection);
+        out.write(pipelined.toString().getBytes());
+        out.flush();
+        connection.shutdownOutput();
+
+        BufferedReader in = new BufferedReader(new InputStreamReader(Channels.newInputStream(connection)));
+        List<String> answers = new ArrayList<>();
+        for (String line = in.readLine(); line != null; line = in.readLine()) {
+            answers.add(line);
+        }
+        connection.close();
+
+        check(answers.size() == REQUESTS.length, "expected " + REQUESTS.length + " answers, got " + answers);
+        for (int i = 0; i < REQUESTS.length; i++) {
+            check(answers.get(i).startsWith(REQUESTS[i][1]), "request " + (i + 1) + ": expected " + REQUESTS[i][1] + ", got " + answers.get(i));
+        }
+        System.out.println("SolverDaemonTest passed");
+        // the daemon never stops by itself
+        System.exit(0);
+    }
+
+    /**
+     * Connects to the daemon, waiting until it binds the socket.
+     *
+     * @param socket file of socket
+     * @return connection
+     * @throws Exception if the daemon does not start in ten seconds
+     */
+    private static SocketChannel connect(File socket) throws Exception {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return SocketChannel.open(java.net.UnixDomainSocketAddress.of(socket.toPath()));
+            } catch (IOException e) {
+                if (attempt == 100) {
+                    throw e;
+                }
+                Thread.sleep(100);
+            }
+        }
+    }
+
+    /**
+     * Fails the test if condition is false.
+     *
+     * @param condition checked condition
+     * @param message   description of failure
+     */
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            System.err.println("SolverDaemonTest failed: " + message);
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * Test of {@link StreamSolver}: records in the standard two-line format, including malformed ones,
+ * get one answer line each, in order of input.
+ * Runs without test framework:
+ * javac -d out src/AntonNekhaev.java test/StreamSolverTest.java && java -cp out StreamSolverTest
+ */
+public class StreamSolverTest {
+    /**
+     * Records of the input file and the beginning of the expected answer for each of them
+     */
+    private static final String[][] RECORDS = {
+            {"[0,0] [4,2] [2,7] [3,4] [7,4] [8,8]\n1", "Win "},
+            {"[0,0] [2,x] [2,7] [3,4] [7,4] [8,8]\n1", "Error: Record 2: Expected number"},
+            {"[0,0] [4,2] [2,7] [3,4] [7,4] [8,8]\n2", "Win "},
+            {"[0,0] [4,2] [2,7] [3,4] [7,4] [8,8]", "Error: Record 4: Expected number"},
+            {"[0,0] [4,2] [2,7] [3,4] [7,4] [8,8]\n2", "Win "},
+            {"[0,0] [4,2] [2,7] [3,4] [7,4] [8,8]\n3", "Error: Record 6: Scenario must be 1 or 2"},
+            {"[0,0] [4,2] [2,7] [3,4] [7,4]\n1", "Error: Record 7: Expected ["},
+            {"[0,0] [4,2] [2,7] [3,4] [7,4] [9,9]\n1", "Error: "},
+            {"[0,0] [4,2] [2,7] [3,4] [7,4] [8,8]\n1", "Win "},
+    };
+
+    /**
+     * Writes records to a temporary file, solves them with one thread and checks answers.
+     *
+     * @param args not used
+     * @throws Exception if the test fails
+     */
+    public static void main(String[] args) throws Exception {
+        File input = File.createTempFile("records", ".txt");
+        File output = File.createTempFile("answers", ".txt");
+        input.deleteOnExit();
+        output.deleteOnExit();
+        StringBuilder records = new StringBuilder();
+        for (String[] record : RECORDS) {
+            records.append(record[0]).append('\n');
+        }
+        Files.writeString(input.toPath(), records);
+
+        StreamSolver.fromArguments(new String[]{"stream", "in=" + input, "out=" + output, "threads=1", "chunk=4"}).run();
+
+        List<String> answers = Files.readAllLines(output.toPath());
+        check(answers.size() == RECORDS.length, "expected " + RECORDS.length + " answers, got " + answers);
+        for (int i = 0; i < RECORDS.length; i++) {
+            check(answers.get(i).startsWith(RECORDS[i][1]), "record " + (i + 1) + ": expected " + RECORDS[i][1] + ", got " + answers.get(i));
+        }
+        System.out.println("StreamSolverTest passed");
+    }
+
+    /**
+     * Fails the test if condition is false.
+     *
+     * @param condition checked condition
+     * @param message   description of failure
+     */
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            System.err.println("StreamSolverTest failed: " + message);
+            System.exit(1);
+        }
+    }
+}